@@ -0,0 +1,63 @@
+package com.akt.api.composite.product;
+
+/**
+ * One element of a streamed product aggregate: first the product itself, without
+ * recommendations and reviews, followed by one element per recommendation and review.
+ */
+public class ProductAggregateItem {
+
+    public enum Type {
+        PRODUCT,
+        RECOMMENDATION,
+        REVIEW
+    }
+
+    private final Type type;
+    private final ProductAggregate product;
+    private final RecommendationSummary recommendation;
+    private final ReviewSummary review;
+
+    public ProductAggregateItem() {
+        this.type = null;
+        this.product = null;
+        this.recommendation = null;
+        this.review = null;
+    }
+
+    public ProductAggregateItem(ProductAggregate product) {
+        this.type = Type.PRODUCT;
+        this.product = product;
+        this.recommendation = null;
+        this.review = null;
+    }
+
+    public ProductAggregateItem(RecommendationSummary recommendation) {
+        this.type = Type.RECOMMENDATION;
+        this.product = null;
+        this.recommendation = recommendation;
+        this.review = null;
+    }
+
+    public ProductAggregateItem(ReviewSummary review) {
+        this.type = Type.REVIEW;
+        this.product = null;
+        this.recommendation = null;
+        this.review = review;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public ProductAggregate getProduct() {
+        return product;
+    }
+
+    public RecommendationSummary getRecommendation() {
+        return recommendation;
+    }
+
+    public ReviewSummary getReview() {
+        return review;
+    }
+}
@@ -7,16 +7,23 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @SecurityRequirement(name = "security_auth")
 @Tag(name = "ProductComposite", description = "REST API for composite product information")
 public interface ProductCompositeService {
 
     /**
-     * Sample usage: "curl $HOST:$PORT/product-composite/1".
+     * Sample usage: "curl $HOST:$PORT/product-composite/1?recommendationLimit=20&reviewLimit=20".
      *
      * @param productId Id of the product
+     * @param afterRecommendationId Keyset cursor for the page of recommendations
+     * @param recommendationLimit Max number of recommendations to return
+     * @param afterReviewId Keyset cursor for the page of reviews
+     * @param reviewLimit Max number of reviews to return
      * @return the composite product info, if found, else null
      */
     @Operation(
@@ -31,7 +38,52 @@ public interface ProductCompositeService {
     @GetMapping(
             value = "/product-composite/{productId}",
             produces = "application/json")
-    Mono<ProductAggregate> getProduct(@PathVariable int productId);
+    Mono<ProductAggregate> getProduct(
+            @PathVariable int productId,
+            @RequestParam(value = "afterRecommendationId", required = false) Integer afterRecommendationId,
+            @RequestParam(value = "recommendationLimit", required = false) Integer recommendationLimit,
+            @RequestParam(value = "afterReviewId", required = false) Integer afterReviewId,
+            @RequestParam(value = "reviewLimit", required = false) Integer reviewLimit);
+
+    /**
+     * Sample usage: "curl -H "Accept: application/x-ndjson" $HOST:$PORT/product-composite/1/stream".
+     *
+     * @param productId Id of the product
+     * @return the product followed by its recommendations and reviews, as they arrive
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-product-stream.description}",
+            description = "${api.product-composite.get-composite-product-stream.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite/{productId}/stream",
+            produces = {"application/x-ndjson", "text/event-stream"})
+    Flux<ProductAggregateItem> getProductStream(@PathVariable int productId);
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/product-composite?ids=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the composite product info of the products found, in the requested order. The ids
+     *         of the products not found are listed in the X-Not-Found-Product-Ids header
+     */
+    @Operation(
+            summary = "${api.product-composite.get-composite-products.description}",
+            description = "${api.product-composite.get-composite-products.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+    })
+    @GetMapping(
+            value = "/product-composite",
+            produces = "application/json")
+    Flux<ProductAggregate> getProducts(@RequestParam(value = "ids", required = true) List<Integer> productIds);
 
     /**
      * Sample usage, see below.
@@ -1,8 +1,11 @@
 package com.akt.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
 
     /**
@@ -32,6 +35,17 @@ public interface ProductService {
             produces = "application/json")
     Mono<Product> getProduct(@PathVariable int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/product?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the products found, ids without a product are skipped
+     */
+    @GetMapping(
+            value = "/product",
+            produces = "application/json")
+    Flux<Product> getProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/product/1".
      *
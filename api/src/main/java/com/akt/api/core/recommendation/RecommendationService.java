@@ -4,18 +4,45 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface RecommendationService {
 
     /**
-     * Sample usage: "curl $HOST:$PORT/recommendation?productId=1".
+     * Sample usage: "curl $HOST:$PORT/recommendation?productId=1&afterRecommendationId=10&limit=20".
+     *
+     * Without afterRecommendationId and limit all recommendations of the product are returned.
+     * Otherwise a page ordered by recommendationId is returned; pass the last recommendationId
+     * of a page as afterRecommendationId to get the next one.
      *
      * @param productId Id of the product
+     * @param afterRecommendationId Keyset cursor, only recommendations with a higher id are returned
+     * @param limit Max number of recommendations to return
      * @return the recommendations of the product
      */
     @GetMapping(
             value = "/recommendation",
             produces = "application/json")
-    Flux<Recommendation> getRecommendations(@RequestParam(value = "productId", required = true) int productId);
+    Flux<Recommendation> getRecommendations(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterRecommendationId", required = false) Integer afterRecommendationId,
+            @RequestParam(value = "limit", required = false) Integer limit);
+
+    default Flux<Recommendation> getRecommendations(int productId) {
+        return getRecommendations(productId, null, null);
+    }
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the recommendations of all the products
+     */
+    @GetMapping(
+            value = "/recommendation",
+            params = "productIds",
+            produces = "application/json")
+    Flux<Recommendation> getRecommendationsByProductIds(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
 
     /**
      * Sample usage, see below.
@@ -4,19 +4,46 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 
 public interface ReviewService {
 
     /**
-     * Sample usage: "curl $HOST:$PORT/review?productId=1".
+     * Sample usage: "curl $HOST:$PORT/review?productId=1&afterReviewId=10&limit=20".
+     *
+     * Without afterReviewId and limit all reviews of the product are returned.
+     * Otherwise a page ordered by reviewId is returned; pass the last reviewId
+     * of a page as afterReviewId to get the next one.
      *
      * @param productId Id of the product
+     * @param afterReviewId Keyset cursor, only reviews with a higher id are returned
+     * @param limit Max number of reviews to return
      * @return the reviews of the product
      */
     @GetMapping(
             value = "/review",
             produces = "application/json")
-    Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
+    Flux<Review> getReviews(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterReviewId", required = false) Integer afterReviewId,
+            @RequestParam(value = "limit", required = false) Integer limit);
+
+    default Flux<Review> getReviews(int productId) {
+        return getReviews(productId, null, null);
+    }
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the reviews of all the products
+     */
+    @GetMapping(
+            value = "/review",
+            params = "productIds",
+            produces = "application/json")
+    Flux<Review> getReviewsByProductIds(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
 
     /**
      * Sample usage, see below.
@@ -1,11 +1,8 @@
 package com.akt.api.event;
 
-import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
-import java.time.ZonedDateTime;
-
-import static java.time.ZonedDateTime.now;
+import java.util.UUID;
 
 public class Event<K, T> {
 
@@ -14,23 +11,36 @@ public class Event<K, T> {
         DELETE
     }
 
+    // Identifies the event across redeliveries, null for events sent by earlier versions
+    private final String eventId;
     private final Type eventType;
     private final K key;
     private final T data;
-    private final ZonedDateTime eventCreatedAt;
+
+    // Epoch millis, cheaper to capture and to serialize than a ZonedDateTime
+    @JsonDeserialize(using = EventTimestampDeserializer.class)
+    private final long eventCreatedAt;
 
     public Event() {
+        this.eventId = null;
         this.eventType = null;
         this.key = null;
         this.data = null;
-        this.eventCreatedAt = null;
+        this.eventCreatedAt = 0;
     }
 
     public Event(Type eventType, K key, T data) {
+        // The id is a dedup key in a store shared by all instances, so it takes a version 4 UUID from the
+        // SecureRandom of UUID.randomUUID() rather than bits of a per-thread generator
+        this.eventId = UUID.randomUUID().toString();
         this.eventType = eventType;
         this.key = key;
         this.data = data;
-        this.eventCreatedAt = now();
+        this.eventCreatedAt = System.currentTimeMillis();
+    }
+
+    public String getEventId() {
+        return eventId;
     }
 
     public Type getEventType() {
@@ -45,8 +55,7 @@ public class Event<K, T> {
         return data;
     }
 
-    @JsonSerialize(using = ZonedDateTimeSerializer.class)
-    public ZonedDateTime getEventCreatedAt() {
+    public long getEventCreatedAt() {
         return eventCreatedAt;
     }
 }
@@ -0,0 +1,46 @@
+package com.akt.api.event;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reads Event.eventCreatedAt as epoch millis. Also accepts the formats written before it was a
+ * number: an ISO-8601 string, or decimal epoch seconds when dates were written as timestamps.
+ */
+public class EventTimestampDeserializer extends JsonDeserializer<Long> {
+
+    @Override
+    public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+
+        if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getDecimalValue().movePointRight(3).longValue();
+        }
+
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            try {
+                return ZonedDateTime.parse(text).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return (Long) context.handleWeirdStringValue(Long.class, text, "not an ISO-8601 date-time");
+            }
+        }
+
+        return (Long) context.handleUnexpectedToken(Long.class, parser);
+    }
+
+    @Override
+    public Long getNullValue(DeserializationContext context) {
+        return 0L;
+    }
+}
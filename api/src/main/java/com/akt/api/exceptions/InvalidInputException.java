@@ -15,4 +15,16 @@ public class InvalidInputException extends RuntimeException{
     public InvalidInputException(Throwable cause) {
         super(cause);
     }
+
+    public InvalidInputException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * Creates the exception without a stack trace, for invalid ids and duplicate keys that are
+     * returned to the caller as 422 and never logged with their stack trace.
+     */
+    public static InvalidInputException withoutStackTrace(String message) {
+        return new InvalidInputException(message, null, false, false);
+    }
 }
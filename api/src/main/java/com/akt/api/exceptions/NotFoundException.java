@@ -15,4 +15,16 @@ public class NotFoundException extends RuntimeException{
     public NotFoundException(Throwable cause) {
         super(cause);
     }
+
+    public NotFoundException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * Creates the exception without capturing a stack trace, which is most of the cost of a 404
+     * for an unknown id. The stack trace of an expected not-found error is never looked at.
+     */
+    public static NotFoundException withoutStackTrace(String message) {
+        return new NotFoundException(message, null, false, false);
+    }
 }
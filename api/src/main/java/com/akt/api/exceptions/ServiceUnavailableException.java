@@ -0,0 +1,30 @@
+package com.akt.api.exceptions;
+
+public class ServiceUnavailableException extends RuntimeException{
+    public ServiceUnavailableException() {
+    }
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ServiceUnavailableException(Throwable cause) {
+        super(cause);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * Creates the exception without capturing a stack trace. A call rejected by an open circuit breaker
+     * or a full bulkhead is expected under load, and its stack trace is never looked at.
+     */
+    public static ServiceUnavailableException withoutStackTrace(String message) {
+        return new ServiceUnavailableException(message, null, false, false);
+    }
+}
@@ -0,0 +1,54 @@
+package com.akt.api.event;
+
+import com.akt.api.core.product.Product;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class EventTests {
+
+    private static final TypeReference<Event<Integer, Product>> EVENT_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void eventCreatedAtIsWrittenAsEpochMillis() throws Exception {
+        Event<Integer, Product> event = new Event<>(CREATE, 1, new Product(1, "name", 2, null));
+
+        String json = mapper.writeValueAsString(event);
+        Event<Integer, Product> read = mapper.readValue(json, EVENT_TYPE);
+
+        assertEquals(mapper.readTree(json).get("eventCreatedAt").asLong(), event.getEventCreatedAt());
+        assertEquals(event.getEventCreatedAt(), read.getEventCreatedAt());
+        assertEquals("name", read.getData().getName());
+    }
+
+    @Test
+    void eventIdIsARandomUuid() {
+        UUID eventId = UUID.fromString(new Event<>(CREATE, 1, null).getEventId());
+
+        assertEquals(4, eventId.version());
+        assertEquals(2, eventId.variant());
+        assertNotEquals(eventId.toString(), new Event<>(CREATE, 1, null).getEventId());
+    }
+
+    @Test
+    void isoStringFromEarlierVersionsIsRead() throws Exception {
+        String json = "{\"eventType\":\"CREATE\",\"key\":1,\"data\":null,\"eventCreatedAt\":\"2024-03-01T10:15:30.123+01:00\"}";
+
+        assertEquals(1709284530123L, mapper.readValue(json, EVENT_TYPE).getEventCreatedAt());
+    }
+
+    @Test
+    void epochSecondsFromEarlierVersionsAreRead() throws Exception {
+        String json = "{\"eventType\":\"CREATE\",\"key\":1,\"data\":null,\"eventCreatedAt\":1709284530.123456789}";
+
+        assertEquals(1709284530123L, mapper.readValue(json, EVENT_TYPE).getEventCreatedAt());
+    }
+}
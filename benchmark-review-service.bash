@@ -0,0 +1,55 @@
+#!/usr/bin/env bash
+#
+# Compares the throughput and latency of the review service's read path at increasing
+# concurrency. Run it once against a review service started with the default (JPA on a bounded
+# elastic pool) persistence, once with the "virtual_threads" profile and once with the "r2dbc"
+# profile, e.g.:
+#
+# SPRING_PROFILES_ACTIVE=virtual_threads java -jar microservices/review-service/build/libs/*.jar
+# ./benchmark-review-service.bash
+#
+# In the JPA modes the time calls wait for the jdbcScheduler is printed after each run.
+#
+# Requires hey (https://github.com/rakyll/hey).
+#
+: ${HOST=localhost}
+: ${PORT=7003}
+: ${PROD_ID=1}
+: ${REVIEW_COUNT=20}
+: ${REQUESTS=10000}
+: ${CONCURRENCY_LEVELS="10 100 1000"}
+
+function printQueueLatency() {
+
+  local metrics=http://$HOST:$PORT/actuator/metrics/review.jdbc.queue
+  curl -s -f $metrics > /dev/null || return 0
+
+  for phi in 0.5 0.95 0.99
+  do
+    echo "jdbcScheduler queue p${phi#0.}: $(curl -s "$metrics.percentile?tag=phi:$phi" | jq '.measurements[0].value') s"
+  done
+  echo "jdbcScheduler queue max: $(curl -s $metrics | jq '.measurements[] | select(.statistic == "MAX") | .value') s"
+}
+
+set -e
+
+echo "HOST=${HOST}"
+echo "PORT=${PORT}"
+
+# Seed the reviews that are read back during the benchmark
+curl -s -X DELETE http://$HOST:$PORT/review?productId=$PROD_ID
+for ((reviewId = 1; reviewId <= REVIEW_COUNT; reviewId++))
+do
+  curl -s -o /dev/null -X POST http://$HOST:$PORT/review \
+    -H "Content-Type: application/json" \
+    --data "{\"productId\":$PROD_ID,\"reviewId\":$reviewId,\"author\":\"author $reviewId\",\"subject\":\"subject $reviewId\",\"content\":\"content $reviewId\"}"
+done
+
+for concurrency in $CONCURRENCY_LEVELS
+do
+  echo ""
+  echo "GET /review?productId=$PROD_ID with concurrency $concurrency"
+  hey -n $REQUESTS -c $concurrency http://$HOST:$PORT/review?productId=$PROD_ID | \
+    grep -E "Requests/sec|Average|Slowest|95% in|99% in|\[[0-9]+\]"
+  printQueueLatency
+done
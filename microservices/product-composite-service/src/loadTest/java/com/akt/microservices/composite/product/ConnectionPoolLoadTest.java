@@ -0,0 +1,160 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.microservices.composite.product.services.DownstreamProperties;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a fixed rate of requests through the composite's downstream WebClient, configured with the
+ * defaults of application.yaml, to three stub core services that answer after a few milliseconds.
+ * The test runs once per protocol, over HTTP/1.1 ("http11") and over h2c ("h2c"), each time with
+ * new stubs and a new connection pool.
+ *
+ * Reports the achieved rate and latency, the number of connections the stubs accepted, i.e. how
+ * often a connection was reused, and the time requests waited to acquire a pooled connection.
+ * The stubs run in the same JVM, so give it enough cores to reach the requested rate. The numbers
+ * include the JIT warming up, use a duration of at least 30 s.
+ *
+ * Arguments: requests per second (default 5000), duration in seconds (default 30) and a
+ * comma-separated list of protocols (default "http11,h2c").
+ */
+public class ConnectionPoolLoadTest {
+
+    private static final String[] STUB_NAMES = {"product", "recommendation", "review"};
+    private static final Duration STUB_LATENCY = Duration.ofMillis(5);
+    private static final String STUB_BODY = "{\"productId\":1,\"name\":\"name\",\"weight\":1}";
+
+    private static final String PENDING_TIME_METRIC = "reactor.netty.connection.provider.pending.connections.time";
+
+    public static void main(String[] args) {
+        int rps = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 30);
+        String[] protocols = (args.length > 2 ? args[2] : "http11,h2c").split(",");
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        meterRegistry.config().meterFilter(withPercentiles());
+        Metrics.addRegistry(meterRegistry);
+
+        for (String protocol : protocols) {
+            run(protocol, rps, duration, meterRegistry);
+        }
+    }
+
+    private static void run(String protocol, int rps, Duration duration, SimpleMeterRegistry meterRegistry) {
+        AtomicLong acceptedConnections = new AtomicLong();
+        List<DisposableServer> stubs = new ArrayList<>();
+        for (int i = 0; i < STUB_NAMES.length; i++) {
+            stubs.add(startStub(acceptedConnections));
+        }
+
+        ProductCompositeServiceApplication application = new ProductCompositeServiceApplication(10, 100);
+        DownstreamProperties downstreamProperties = new DownstreamProperties();
+        downstreamProperties.setHttp2(protocol.equals("h2c"));
+        ConnectionProvider connectionProvider = application.downstreamConnectionProvider(downstreamProperties);
+        WebClient webClient = application.loadBalancedWebClientBuilder(connectionProvider, downstreamProperties).build();
+
+        try {
+            System.out.printf("Sending %d requests/s for %d s to %d stub services over %s%n", rps, duration.toSeconds(), stubs.size(), protocol);
+            Timer latency = Timer.builder("loadtest.latency").tag("protocol", protocol).register(meterRegistry);
+            AtomicLong failures = new AtomicLong();
+            long startedAt = System.nanoTime();
+            send(webClient, stubs, rps, duration, latency, failures);
+            double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+
+            System.out.printf("Requests:    %d ok, %d failed, %.0f requests/s%n",
+                    latency.count(), failures.get(), latency.count() / elapsedSeconds);
+            System.out.printf("Latency:     %s%n", format(latency.takeSnapshot()));
+            System.out.printf("Connections: %d opened, %.0f requests per connection%n",
+                    acceptedConnections.get(), (double) latency.count() / Math.max(1, acceptedConnections.get()));
+            for (DisposableServer stub : stubs) {
+                Timer pendingTime = meterRegistry.find(PENDING_TIME_METRIC)
+                        .tag("status", "SUCCESS")
+                        .tag("remote.address", stub.host() + ":" + stub.port())
+                        .timer();
+                if (pendingTime == null) {
+                    continue;
+                }
+                System.out.printf("Acquire:     %s, %d acquires, %s%n", pendingTime.getId().getTag("remote.address"),
+                        pendingTime.count(), format(pendingTime.takeSnapshot()));
+            }
+        } finally {
+            connectionProvider.dispose();
+            stubs.forEach(DisposableServer::disposeNow);
+        }
+    }
+
+    private static void send(WebClient webClient, List<DisposableServer> stubs, int rps, Duration duration, Timer latency, AtomicLong failures) {
+        // Ticks the generator can't keep up with are dropped, so the achieved rate may be lower than rps
+        Flux.interval(Duration.ofNanos(TimeUnit.SECONDS.toNanos(1) / rps))
+                .onBackpressureDrop()
+                .take(duration)
+                .flatMap(tick -> call(webClient, stubs.get((int) (tick % stubs.size())), latency)
+                        .onErrorResume(error -> {
+                            failures.incrementAndGet();
+                            return Mono.empty();
+                        }), Integer.MAX_VALUE)
+                .blockLast();
+    }
+
+    private static Mono<String> call(WebClient webClient, DisposableServer stub, Timer latency) {
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            return webClient.get()
+                    .uri("http://" + stub.host() + ":" + stub.port() + "/product/1")
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .doOnNext(body -> latency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private static DisposableServer startStub(AtomicLong acceptedConnections) {
+        return HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .doOnChannelInit((observer, channel, remoteAddress) -> acceptedConnections.incrementAndGet())
+                .route(routes -> routes.get("/**", (request, response) -> response
+                        .header("Content-Type", "application/json")
+                        .sendString(Mono.delay(STUB_LATENCY).thenReturn(STUB_BODY))))
+                .bindNow();
+    }
+
+    private static MeterFilter withPercentiles() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.99, 0.999)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+
+    private static String format(HistogramSnapshot snapshot) {
+        StringBuilder result = new StringBuilder();
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            result.append(String.format("p%s %.3f ms, ", value.percentile() * 100, value.value(TimeUnit.MILLISECONDS)));
+        }
+        return result.append(String.format("max %.3f ms", snapshot.max(TimeUnit.MILLISECONDS))).toString();
+    }
+}
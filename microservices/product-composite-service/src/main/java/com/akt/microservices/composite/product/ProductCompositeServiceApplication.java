@@ -1,5 +1,6 @@
 package com.akt.microservices.composite.product;
 
+import com.akt.microservices.composite.product.services.DownstreamProperties;
 import io.swagger.v3.oas.models.ExternalDocumentation;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.info.Contact;
@@ -11,16 +12,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @SpringBootApplication
 @ComponentScan("com.akt")
+@EnableConfigurationProperties(DownstreamProperties.class)
 public class ProductCompositeServiceApplication {
 
 	private static final Logger logger = LoggerFactory.getLogger(ProductCompositeServiceApplication.class);
@@ -79,10 +86,40 @@ public class ProductCompositeServiceApplication {
 		return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "publish-pool");
 	}
 
+	/**
+	 * Connection pool for the calls to the core services. Reactor Netty keeps one pool per remote
+	 * address, so the limits apply to each core service instance. With metrics enabled, the pools
+	 * are published as "reactor.netty.connection.provider.*" tagged with the remote address.
+	 */
+	@Bean(destroyMethod = "dispose")
+	public ConnectionProvider downstreamConnectionProvider(DownstreamProperties downstreamProperties) {
+		DownstreamProperties.Pool pool = downstreamProperties.getPool();
+		logger.info("Creating a downstreamConnectionProvider with maxConnections = {}, pendingAcquireMaxCount = {} and lifo = {}",
+				pool.getMaxConnections(), pool.getPendingAcquireMaxCount(), pool.isLifo());
+		ConnectionProvider.Builder builder = ConnectionProvider.builder("downstream")
+				.maxConnections(pool.getMaxConnections())
+				.pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+				.pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+				.maxIdleTime(pool.getMaxIdleTime())
+				.maxLifeTime(pool.getMaxLifeTime())
+				.evictInBackground(pool.getEvictionInterval())
+				.metrics(pool.isMetrics());
+		return (pool.isLifo() ? builder.lifo() : builder.fifo()).build();
+	}
+
+	/**
+	 * With http2, the core services are called over HTTP/2 without TLS (h2c, prior knowledge), so the
+	 * calls to one instance are multiplexed over a single connection instead of one connection each.
+	 */
 	@Bean
 	@LoadBalanced
-	public WebClient.Builder loadBalancedWebClientBuilder(){
-		return WebClient.builder();
+	public WebClient.Builder loadBalancedWebClientBuilder(
+			ConnectionProvider downstreamConnectionProvider,
+			DownstreamProperties downstreamProperties){
+		HttpClient httpClient = HttpClient.create(downstreamConnectionProvider)
+				.protocol(downstreamProperties.isHttp2() ? HttpProtocol.H2C : HttpProtocol.HTTP11);
+		return WebClient.builder()
+				.clientConnector(new ReactorClientHttpConnector(httpClient));
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,29 @@
+package com.akt.microservices.composite.product.services;
+
+import com.akt.api.event.Event;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.Consumer;
+
+import static com.akt.api.event.Event.Type.CREATE;
+
+/**
+ * Invalidates the cached entries of a product changed through any composite instance. Every instance
+ * consumes the product, recommendation and review events in an anonymous group of its own, see the
+ * cacheInvalidator-in-0 binding, so it doesn't serve a product changed elsewhere until timeToLive.
+ */
+@Configuration
+public class CacheInvalidationConfig {
+
+    @Bean
+    public Consumer<Event<Integer, Object>> cacheInvalidator(ProductAggregateCache productAggregateCache,
+                                                             NotFoundProductCache notFoundProductCache) {
+        return event -> {
+            productAggregateCache.invalidateChanged(event.getKey());
+            if (event.getEventType() == CREATE) {
+                notFoundProductCache.invalidate(event.getKey());
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package com.akt.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded cache of the last response of the core services to a product or list request, keyed by
+ * URL with the response's ETag and mapped body as value. The ETag is sent as If-None-Match on the
+ * next request for the URL, and a 304 answer is served from the cached body, so unchanged data is
+ * neither sent nor deserialized again.
+ *
+ * Entries are always revalidated, timeToLive only bounds how long unused bodies are kept.
+ * Hit, miss and eviction counts are exposed as the "conditionalResponses" cache metrics on the
+ * actuator, and 304 answers are counted as "composite.downstream.not.modified".
+ */
+@Component
+public class ConditionalResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConditionalResponseCache.class);
+
+    private static final String CACHE_NAME = "conditionalResponses";
+
+    private final MeteredCache<String, CachedResponse> cache;
+    private final Counter notModifiedCounter;
+
+    @Autowired
+    public ConditionalResponseCache(
+            @Value("${app.conditionalResponseCache.maxSize:10000}") long maxSize,
+            @Value("${app.conditionalResponseCache.timeToLive:10m}") Duration timeToLive,
+            MeterRegistry meterRegistry) {
+
+        logger.info("Creating a conditional response cache with maxSize = {} and timeToLive = {}", maxSize, timeToLive);
+        this.cache = MeteredCache.expiringAfterAccess(CACHE_NAME, maxSize, timeToLive, meterRegistry);
+        this.notModifiedCounter = Counter.builder("composite.downstream.not.modified")
+                .description("Downstream calls answered with a 304 and served from the conditional response cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the last response for the URL, or null if none is cached
+     */
+    public CachedResponse get(String url) {
+        return cache.get(url);
+    }
+
+    public void put(String url, String etag, Object body) {
+        cache.put(url, new CachedResponse(etag, body));
+    }
+
+    public void recordNotModified(String url) {
+        logger.debug("Serving the cached response for an unchanged URL: {}", url);
+        notModifiedCounter.increment();
+    }
+
+    public record CachedResponse(String etag, Object body) {
+    }
+}
@@ -0,0 +1,430 @@
+package com.akt.microservices.composite.product.services;
+
+import com.akt.api.event.Event;
+import com.akt.api.exceptions.ServiceUnavailableException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.retry.Retry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Outbox for the events published by the composite service. Events are enqueued in memory and a
+ * relay sends them to their bindings in batches of up to maxBatchSize events, waiting at most
+ * linger for a batch to fill up. A batch is sent in one task on the publish-pool, so events keep
+ * their order and are sent at least once. A failed batch is retried from its first unsent event up
+ * to maxRetries times, then its unsent events are given up on and the relay moves on. Events are
+ * rejected with a ServiceUnavailableException while maxPending events are waiting to be sent.
+ *
+ * With publisherConfirms, the events of a batch are published back to back and the relay then waits
+ * once, for at most confirmTimeout, for the broker to confirm all of them, so a batch costs one confirm
+ * round trip instead of one per event. A retry resumes the batch from its first unconfirmed event.
+ * This relies on the RabbitMQ binder's useConfirmHeader, the Kafka producer batches the records itself.
+ *
+ * When a file is configured, every event is appended to it before it is enqueued, followed by a
+ * marker once its batch is sent. Events without a marker, and events given up on, are sent again
+ * after a restart. The file is event-outbox.log by default. With an empty file the outbox is kept in
+ * memory only, unsent events are lost on a crash and events given up on are only logged.
+ *
+ * The relay starts, and sends the events recovered from the file, when the context starts, after the
+ * output bindings are bound and before requests are accepted. On shutdown it sends the events still in
+ * the outbox after requests stopped and before the bindings are unbound.
+ *
+ * With the outbox disabled, events are sent directly on the caller's thread.
+ *
+ * Enqueue-to-broker latency is published as "composite.outbox.latency", the size of the sent
+ * batches as "composite.outbox.batch.size", the number of unsent events as "composite.outbox.pending"
+ * and the number of events given up on as "composite.outbox.failed".
+ */
+@Component
+public class EventOutbox implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventOutbox.class);
+
+    private static final String EVENT_RECORD = "E";
+    private static final String SENT_RECORD = "S";
+    private static final String FAILED_RECORD = "F";
+
+    private final StreamBridge streamBridge;
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+    private final int maxPending;
+    private final Path file;
+    private final boolean fsync;
+    private final boolean publisherConfirms;
+    private final Duration confirmTimeout;
+
+    private final Sinks.Many<OutboxEntry> outbox = Sinks.many().unicast().onBackpressureBuffer();
+    private final Mono<Void> relay;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Timer latencyTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter failedCounter;
+
+    private volatile boolean running;
+    private long nextSequence = 1;
+    private BufferedWriter writer;
+    private FileChannel channel;
+
+    @Autowired
+    public EventOutbox(
+            StreamBridge streamBridge,
+            @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
+            ObjectMapper mapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.eventOutbox.enabled:false}") boolean enabled,
+            @Value("${app.eventOutbox.maxBatchSize:100}") int maxBatchSize,
+            @Value("${app.eventOutbox.linger:5ms}") Duration linger,
+            @Value("${app.eventOutbox.maxRetries:10}") long maxRetries,
+            @Value("${app.eventOutbox.maxPending:10000}") int maxPending,
+            @Value("${app.eventOutbox.file:event-outbox.log}") String file,
+            @Value("${app.eventOutbox.fsync:false}") boolean fsync,
+            @Value("${app.eventOutbox.publisherConfirms:false}") boolean publisherConfirms,
+            @Value("${app.eventOutbox.confirmTimeout:5s}") Duration confirmTimeout) {
+
+        this.streamBridge = streamBridge;
+        this.mapper = mapper;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.file = file.isEmpty() ? null : Path.of(file);
+        this.fsync = fsync;
+        this.publisherConfirms = publisherConfirms;
+        this.confirmTimeout = confirmTimeout;
+
+        this.latencyTimer = Timer.builder("composite.outbox.latency")
+                .description("Time from enqueueing an event in the outbox until the binder accepted it")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("composite.outbox.batch.size")
+                .description("Number of events sent by the outbox relay in one batch")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("composite.outbox.failed")
+                .description("Events the outbox relay gave up on after maxRetries retries")
+                .register(meterRegistry);
+        meterRegistry.gauge("composite.outbox.pending", pending);
+
+        if (enabled) {
+            logger.info("Creating an event outbox with maxBatchSize = {}, linger = {}, maxRetries = {}, maxPending = {}, file = {} and publisherConfirms = {}",
+                    maxBatchSize, linger, maxRetries, maxPending, this.file, publisherConfirms);
+            Retry relayRetry = Retry.backoff(maxRetries, Duration.ofMillis(100))
+                    .maxBackoff(Duration.ofSeconds(5))
+                    .doBeforeRetry(signal -> logger.warn("Failed to send a batch of events, will retry: {}", signal.failure().toString()));
+            this.relay = outbox.asFlux()
+                    .bufferTimeout(maxBatchSize, linger, true)
+                    .concatMap(batch -> {
+                        // A retry resumes the batch after the events the binder, or the broker with confirms, already accepted
+                        AtomicInteger sent = new AtomicInteger();
+                        return Mono.fromRunnable(() -> sendBatch(batch, sent))
+                                .subscribeOn(publishEventScheduler)
+                                .retryWhen(relayRetry)
+                                .onErrorResume(ex -> Mono.fromRunnable(() -> giveUp(batch, sent.get(), ex)));
+                    })
+                    .then()
+                    .cache();
+        } else {
+            this.relay = Mono.empty();
+        }
+    }
+
+    public void send(String bindingName, Event<?, ?> event) {
+        if (!enabled) {
+            sendMessage(bindingName, event, null);
+            return;
+        }
+
+        long enqueuedAt = System.nanoTime();
+        synchronized (this) {
+            if (!running) {
+                throw ServiceUnavailableException.withoutStackTrace("The event outbox is not running");
+            }
+            if (pending.get() >= maxPending) {
+                throw ServiceUnavailableException.withoutStackTrace(
+                        "The event outbox is full, " + pending.get() + " events are waiting to be sent");
+            }
+            long sequence = nextSequence++;
+            if (file != null) {
+                append(EVENT_RECORD + " " + sequence + " " + bindingName + " " + toJson(event));
+            }
+            enqueue(new OutboxEntry(sequence, bindingName, event, enqueuedAt));
+        }
+    }
+
+    /**
+     * Starts the relay and enqueues the events of the outbox file that are still unsent.
+     */
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        relay.subscribe();
+        synchronized (this) {
+            if (file != null) {
+                recover();
+            }
+            running = true;
+        }
+    }
+
+    /**
+     * Sends the events that are still in the outbox before the bindings are closed.
+     */
+    @Override
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+
+        logger.info("Sending the {} events left in the outbox", pending.get());
+        synchronized (this) {
+            running = false;
+            outbox.tryEmitComplete();
+        }
+        relay.block(Duration.ofSeconds(10));
+
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the outbox file: {}", e.toString());
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts after the output bindings, phase Integer.MIN_VALUE + 1000, and before the web server.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void sendBatch(List<OutboxEntry> batch, AtomicInteger sent) {
+        logger.debug("Sending a batch of {} events, {} of them already sent", batch.size(), sent.get());
+        List<CorrelationData> confirms = new ArrayList<>();
+        for (int i = sent.get(); i < batch.size(); i++) {
+            OutboxEntry entry = batch.get(i);
+            if (publisherConfirms) {
+                CorrelationData confirm = new CorrelationData(String.valueOf(entry.sequence()));
+                sendMessage(entry.bindingName(), entry.event(), confirm);
+                confirms.add(confirm);
+            } else {
+                sendMessage(entry.bindingName(), entry.event(), null);
+                sent.incrementAndGet();
+            }
+        }
+        awaitConfirms(confirms, sent);
+
+        long sentAt = System.nanoTime();
+        for (OutboxEntry entry : batch) {
+            latencyTimer.record(sentAt - entry.enqueuedAt(), TimeUnit.NANOSECONDS);
+        }
+        batchSizeSummary.record(batch.size());
+        pending.addAndGet(-batch.size());
+
+        if (file != null) {
+            synchronized (this) {
+                append(SENT_RECORD + " " + batch.get(batch.size() - 1).sequence());
+            }
+        }
+    }
+
+    /**
+     * Gives up on the events of the batch that were not sent. With a file, they are recorded in it
+     * to be sent again after a restart, otherwise they are logged.
+     */
+    private void giveUp(List<OutboxEntry> batch, int sent, Throwable failure) {
+        List<OutboxEntry> unsent = batch.subList(sent, batch.size());
+        logger.error("Giving up on {} events after the last retry: {}", unsent.size(), failure.toString());
+        failedCounter.increment(unsent.size());
+
+        if (file != null) {
+            synchronized (this) {
+                for (OutboxEntry entry : unsent) {
+                    append(FAILED_RECORD + " " + entry.sequence() + " " + entry.bindingName() + " " + toJson(entry.event()));
+                }
+                if (sent > 0) {
+                    append(SENT_RECORD + " " + batch.get(sent - 1).sequence());
+                }
+            }
+        } else {
+            for (OutboxEntry entry : unsent) {
+                logger.error("Unsent {} event for {}: {}", entry.event().getEventType(), entry.bindingName(), toJson(entry.event()));
+            }
+        }
+
+        long sentAt = System.nanoTime();
+        for (OutboxEntry entry : batch.subList(0, sent)) {
+            latencyTimer.record(sentAt - entry.enqueuedAt(), TimeUnit.NANOSECONDS);
+        }
+        pending.addAndGet(-batch.size());
+    }
+
+    /**
+     * Waits for the broker to confirm the published events of a batch and counts them as sent in
+     * order, up to the first event that is not confirmed in time or is rejected.
+     */
+    private void awaitConfirms(List<CorrelationData> confirms, AtomicInteger sent) {
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        for (CorrelationData correlation : confirms) {
+            CorrelationData.Confirm confirm;
+            try {
+                confirm = correlation.getFuture().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("The broker did not confirm event " + correlation.getId() + " within " + confirmTimeout);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Failed to confirm event " + correlation.getId(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the confirm of event " + correlation.getId(), e);
+            }
+            if (!confirm.isAck()) {
+                throw new IllegalStateException("The broker rejected event " + correlation.getId() + ": " + confirm.getReason());
+            }
+            sent.incrementAndGet();
+        }
+    }
+
+    private void sendMessage(String bindingName, Event<?, ?> event, CorrelationData confirm) {
+        logger.debug("Sending a {} message to {}", event.getEventType(), bindingName);
+        MessageBuilder<Event<?, ?>> builder = MessageBuilder.<Event<?, ?>>withPayload(event)
+                .setHeader("partitionKey", event.getKey());
+        if (confirm != null) {
+            builder.setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, confirm);
+        }
+        Message<Event<?, ?>> message = builder.build();
+        if (!streamBridge.send(bindingName, message)) {
+            throw new IllegalStateException("Failed to send a " + event.getEventType() + " message to " + bindingName);
+        }
+    }
+
+    private void enqueue(OutboxEntry entry) {
+        pending.incrementAndGet();
+        outbox.emitNext(entry, Sinks.EmitFailureHandler.FAIL_FAST);
+    }
+
+    /**
+     * Enqueues the events of the outbox file that were not sent before the last shutdown, or that
+     * were given up on, and rewrites the file with only those events.
+     */
+    private synchronized void recover() {
+        List<String> unsentRecords = new ArrayList<>();
+        try {
+            if (Files.exists(file)) {
+                long lastSent = 0;
+                List<String> eventRecords = new ArrayList<>();
+                TreeMap<Long, String> unsentBySequence = new TreeMap<>();
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.startsWith(SENT_RECORD + " ")) {
+                        lastSent = Math.max(lastSent, Long.parseLong(line.substring(2)));
+                    } else if (line.startsWith(EVENT_RECORD + " ")) {
+                        eventRecords.add(line);
+                    } else if (line.startsWith(FAILED_RECORD + " ")) {
+                        unsentBySequence.put(Long.parseLong(line.split(" ", 4)[1]), EVENT_RECORD + line.substring(1));
+                    }
+                }
+                for (String line : eventRecords) {
+                    long sequence = Long.parseLong(line.split(" ", 4)[1]);
+                    if (sequence > lastSent) {
+                        unsentBySequence.put(sequence, line);
+                    }
+                }
+                unsentRecords.addAll(unsentBySequence.values());
+            }
+
+            Path compactedFile = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(compactedFile, unsentRecords, StandardCharsets.UTF_8);
+            Files.move(compactedFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the outbox file " + file, e);
+        }
+
+        logger.info("Resending {} events from the outbox file {}", unsentRecords.size(), file);
+        for (String line : unsentRecords) {
+            String[] fields = line.split(" ", 4);
+            long sequence = Long.parseLong(fields[1]);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            enqueue(new OutboxEntry(sequence, fields[2], fromJson(fields[3]), System.nanoTime()));
+        }
+    }
+
+    private void append(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+            if (fsync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to the outbox file " + file, e);
+        }
+    }
+
+    private String toJson(Event<?, ?> event) {
+        try {
+            return mapper.writeValueAsString(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Event<?, ?> fromJson(String json) {
+        try {
+            return mapper.readValue(json, Event.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record OutboxEntry(long sequence, String bindingName, Event<?, ?> event, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,51 @@
+package com.akt.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+
+/**
+ * Bounded Caffeine cache whose hit, miss and eviction counts are exposed as the cache metrics of
+ * its name on the actuator. The caches of the composite service keep their entries in one of these.
+ */
+class MeteredCache<K, V> {
+
+    private final Cache<K, V> cache;
+
+    private MeteredCache(String name, Caffeine<Object, Object> builder, MeterRegistry meterRegistry) {
+        this.cache = builder.recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    }
+
+    /**
+     * Creates a cache whose entries expire timeToLive after they were written.
+     */
+    static <K, V> MeteredCache<K, V> expiringAfterWrite(String name, long maxSize, Duration timeToLive, MeterRegistry meterRegistry) {
+        return new MeteredCache<>(name, Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(timeToLive), meterRegistry);
+    }
+
+    /**
+     * Creates a cache whose entries expire timeToLive after they were last read or written.
+     */
+    static <K, V> MeteredCache<K, V> expiringAfterAccess(String name, long maxSize, Duration timeToLive, MeterRegistry meterRegistry) {
+        return new MeteredCache<>(name, Caffeine.newBuilder().maximumSize(maxSize).expireAfterAccess(timeToLive), meterRegistry);
+    }
+
+    /**
+     * @return the value cached for the key, or null if there is none
+     */
+    V get(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    void invalidate(K key) {
+        cache.invalidate(key);
+    }
+}
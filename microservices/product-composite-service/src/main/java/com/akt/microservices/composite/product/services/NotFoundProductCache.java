@@ -0,0 +1,56 @@
+package com.akt.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded, short-lived cache of the productIds the product service answered with 404, keyed by
+ * productId with the error message as value, so repeated lookups of a missing product fail
+ * without calling any core service.
+ *
+ * An entry is invalidated when this instance publishes a CREATE event for the product, and on every
+ * instance when it consumes the event, see CacheInvalidationConfig. Products created while a lookup
+ * that ends in a 404 was in flight are found once the entry expires, so timeToLive is kept short.
+ * Hit, miss and eviction counts are exposed as the "notFoundProducts" cache metrics on the actuator.
+ */
+@Component
+public class NotFoundProductCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotFoundProductCache.class);
+
+    private static final String CACHE_NAME = "notFoundProducts";
+
+    private final MeteredCache<Integer, String> cache;
+
+    @Autowired
+    public NotFoundProductCache(
+            @Value("${app.notFoundProductCache.maxSize:10000}") long maxSize,
+            @Value("${app.notFoundProductCache.timeToLive:5s}") Duration timeToLive,
+            MeterRegistry meterRegistry) {
+
+        logger.info("Creating a not-found product cache with maxSize = {} and timeToLive = {}", maxSize, timeToLive);
+        this.cache = MeteredCache.expiringAfterWrite(CACHE_NAME, maxSize, timeToLive, meterRegistry);
+    }
+
+    /**
+     * @return the message of the 404 for the product, or null if it is not known to be missing
+     */
+    public String getMessage(int productId) {
+        return cache.get(productId);
+    }
+
+    public void put(int productId, String message) {
+        logger.debug("Caching the not-found result for productId: {}", productId);
+        cache.put(productId, message);
+    }
+
+    public void invalidate(int productId) {
+        cache.invalidate(productId);
+    }
+}
@@ -0,0 +1,50 @@
+package com.akt.microservices.composite.product.services;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the requested product ids that a composite response leaves out because the products
+ * were not found, in the X-Not-Found-Product-Ids response header as a comma-separated list. The
+ * ids are recorded in the Reactor context of the request and the header is set just before the
+ * response is committed.
+ */
+@Component
+public class NotFoundProductIds implements WebFilter {
+
+    public static final String HEADER = "X-Not-Found-Product-Ids";
+
+    private static final String KEY = NotFoundProductIds.class.getName();
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        List<Integer> notFoundIds = Collections.synchronizedList(new ArrayList<>());
+        exchange.getResponse().beforeCommit(() -> {
+            synchronized (notFoundIds) {
+                if (!notFoundIds.isEmpty()) {
+                    exchange.getResponse().getHeaders().set(HEADER,
+                            notFoundIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+                }
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange).contextWrite(ctx -> ctx.put(KEY, notFoundIds));
+    }
+
+    /**
+     * Records the product ids as not found for the request of the given context, if any.
+     */
+    static void record(ContextView ctx, Collection<Integer> productIds) {
+        ctx.<List<Integer>>getOrEmpty(KEY).ifPresent(notFoundIds -> notFoundIds.addAll(productIds));
+    }
+}
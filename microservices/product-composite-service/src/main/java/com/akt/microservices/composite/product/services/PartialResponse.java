@@ -0,0 +1,34 @@
+package com.akt.microservices.composite.product.services;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Records whether a composite response was built with a list left out, because the call for it
+ * failed, missed its deadline or was rejected by the circuit breaker. It is carried in the Reactor
+ * context of the calls for the response, so a partial response isn't cached as if it were complete.
+ */
+public class PartialResponse {
+
+    private static final String KEY = PartialResponse.class.getName();
+
+    private volatile boolean partial;
+
+    /**
+     * Returns the given context with this response, to be marked by the calls made in it.
+     */
+    public Context register(Context ctx) {
+        return ctx.put(KEY, this);
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Marks the response registered in the given context, if any, as partial.
+     */
+    static void markPartial(ContextView ctx) {
+        ctx.<PartialResponse>getOrEmpty(KEY).ifPresent(response -> response.partial = true);
+    }
+}
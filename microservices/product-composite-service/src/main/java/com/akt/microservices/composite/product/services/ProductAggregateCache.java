@@ -0,0 +1,71 @@
+package com.akt.microservices.composite.product.services;
+
+import com.akt.api.composite.product.ProductAggregate;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, time-limited cache of assembled product aggregates keyed by productId. Only aggregates
+ * built from successful calls to all three core services are cached.
+ *
+ * Each instance has its own cache. Entries are evicted on size and time-to-live, and invalidated
+ * when this instance publishes a CREATE or DELETE event for the product, and on every instance when
+ * it consumes the event, see CacheInvalidationConfig. The core services apply the event about when
+ * it is consumed, so a read in flight or made right after the invalidation may cache the old aggregate
+ * again. The consumed event therefore invalidates the entry once more after invalidationDelay, which
+ * should cover the time the core services take to apply an event (see the "event.lag" timer) and the
+ * request budget of a read. An instance that misses the event serves the old aggregate until timeToLive.
+ * Hit, miss and eviction counts are exposed as the "productAggregates" cache metrics on the actuator.
+ */
+@Component
+public class ProductAggregateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductAggregateCache.class);
+
+    private static final String CACHE_NAME = "productAggregates";
+
+    private final MeteredCache<Integer, ProductAggregate> cache;
+    private final Duration invalidationDelay;
+
+    @Autowired
+    public ProductAggregateCache(
+            @Value("${app.productAggregateCache.maxSize:10000}") long maxSize,
+            @Value("${app.productAggregateCache.timeToLive:30s}") Duration timeToLive,
+            @Value("${app.productAggregateCache.invalidationDelay:5s}") Duration invalidationDelay,
+            MeterRegistry meterRegistry) {
+
+        logger.info("Creating a product aggregate cache with maxSize = {}, timeToLive = {} and invalidationDelay = {}",
+                maxSize, timeToLive, invalidationDelay);
+        this.invalidationDelay = invalidationDelay;
+        this.cache = MeteredCache.expiringAfterWrite(CACHE_NAME, maxSize, timeToLive, meterRegistry);
+    }
+
+    public ProductAggregate get(int productId) {
+        return cache.get(productId);
+    }
+
+    public void put(ProductAggregate productAggregate) {
+        cache.put(productAggregate.getProductId(), productAggregate);
+    }
+
+    public void invalidate(int productId) {
+        logger.debug("Invalidating the cached product aggregate for productId: {}", productId);
+        cache.invalidate(productId);
+    }
+
+    /**
+     * Invalidates the aggregate of a product that is being changed, now and again after invalidationDelay.
+     */
+    public void invalidateChanged(int productId) {
+        invalidate(productId);
+        Schedulers.parallel().schedule(() -> invalidate(productId), invalidationDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -9,29 +9,44 @@ import com.akt.api.core.review.ReviewService;
 import com.akt.api.event.Event;
 import com.akt.api.exceptions.InvalidInputException;
 import com.akt.api.exceptions.NotFoundException;
+import com.akt.api.exceptions.ServiceUnavailableException;
 import com.akt.util.http.HttpErrorInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
-import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 import static com.akt.api.event.Event.Type.CREATE;
 import static com.akt.api.event.Event.Type.DELETE;
+import static com.akt.util.http.ConditionalGetFilter.NO_ETAG;
 import static java.util.logging.Level.FINE;
 import static reactor.core.publisher.Flux.empty;
 
@@ -44,76 +59,256 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     private static final String RECOMMENDATION_SERVICE_URL = "http://recommendation";
     private static final String REVIEW_SERVICE_URL = "http://review";
 
+    private static final ParameterizedTypeReference<Product> PRODUCT_TYPE = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<List<Recommendation>> RECOMMENDATION_LIST_TYPE = new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<List<Review>> REVIEW_LIST_TYPE = new ParameterizedTypeReference<>() {};
+
     private final WebClient webClient;
     private final ObjectMapper mapper;
 
-    private final StreamBridge streamBridge;
+    private final EventOutbox eventOutbox;
     private final Scheduler publishEventScheduler;
+    private final ProductAggregateCache productAggregateCache;
+    private final NotFoundProductCache notFoundProductCache;
+    private final ConditionalResponseCache conditionalResponseCache;
+    private final RequestDeadline requestDeadline;
+
+    private final RequestCoalescer<Integer, Product> productRequests;
+    private final RequestCoalescer<Integer, Recommendation> recommendationRequests;
+    private final RequestCoalescer<Integer, Review> reviewRequests;
+
+    private final RequestHedger productHedger;
+    private final RequestHedger recommendationHedger;
+    private final RequestHedger reviewHedger;
+
+    private final CircuitBreaker productCircuitBreaker;
+    private final CircuitBreaker recommendationCircuitBreaker;
+    private final CircuitBreaker reviewCircuitBreaker;
+    private final Bulkhead productBulkhead;
+    private final Bulkhead recommendationBulkhead;
+    private final Bulkhead reviewBulkhead;
 
     @Autowired
     public ProductCompositeIntegration (
             @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
             WebClient.Builder webClientBuilder,
             ObjectMapper mapper,
-            StreamBridge streamBridge) {
+            EventOutbox eventOutbox,
+            ProductAggregateCache productAggregateCache,
+            NotFoundProductCache notFoundProductCache,
+            ConditionalResponseCache conditionalResponseCache,
+            RequestDeadline requestDeadline,
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            BulkheadRegistry bulkheadRegistry,
+            MeterRegistry meterRegistry,
+            DownstreamProperties downstreamProperties,
+            @Value("${app.productFetch.strategy:parallel}") ProductFetchStrategy productFetchStrategy) {
 
         this.publishEventScheduler = publishEventScheduler;
         this.webClient = webClientBuilder.build();
         this.mapper = mapper;
-        this.streamBridge = streamBridge;
+        this.eventOutbox = eventOutbox;
+        this.productAggregateCache = productAggregateCache;
+        this.notFoundProductCache = notFoundProductCache;
+        this.conditionalResponseCache = conditionalResponseCache;
+        this.requestDeadline = requestDeadline;
+
+        this.productRequests = new RequestCoalescer<>("product", meterRegistry);
+        // With parallel-with-cancel, list requests nobody waits for anymore are cancelled
+        boolean cancelWhenUnused = productFetchStrategy == ProductFetchStrategy.PARALLEL_WITH_CANCEL;
+        this.recommendationRequests = new RequestCoalescer<>("recommendations", cancelWhenUnused, meterRegistry);
+        this.reviewRequests = new RequestCoalescer<>("reviews", cancelWhenUnused, meterRegistry);
+
+        this.productHedger = new RequestHedger("product", downstreamProperties.getHedging(), meterRegistry);
+        this.recommendationHedger = new RequestHedger("recommendations", downstreamProperties.getHedging(), meterRegistry);
+        this.reviewHedger = new RequestHedger("reviews", downstreamProperties.getHedging(), meterRegistry);
+
+        this.productCircuitBreaker = circuitBreakerRegistry.circuitBreaker("product");
+        this.recommendationCircuitBreaker = circuitBreakerRegistry.circuitBreaker("recommendation");
+        this.reviewCircuitBreaker = circuitBreakerRegistry.circuitBreaker("review");
+        this.productBulkhead = bulkheadRegistry.bulkhead("product");
+        this.recommendationBulkhead = bulkheadRegistry.bulkhead("recommendation");
+        this.reviewBulkhead = bulkheadRegistry.bulkhead("review");
     }
 
     public Mono<Health> getProductHealth() {
-        return getHealth(PRODUCT_SERVICE_URL);
+        return getHealth(PRODUCT_SERVICE_URL, productCircuitBreaker, productBulkhead);
     }
 
     public Mono<Health> getRecommendationHealth() {
-        return getHealth(RECOMMENDATION_SERVICE_URL);
+        return getHealth(RECOMMENDATION_SERVICE_URL, recommendationCircuitBreaker, recommendationBulkhead);
     }
 
     public Mono<Health> getReviewHealth() {
-        return getHealth(REVIEW_SERVICE_URL);
+        return getHealth(REVIEW_SERVICE_URL, reviewCircuitBreaker, reviewBulkhead);
     }
 
+    // Every call to a core service is bounded by callTimeout, each caller waits for it at most until its own deadline
     public Mono<Product> getProduct(int productId){
-        String url = PRODUCT_SERVICE_URL +  "/product/" + productId;
-        logger.debug("Calling getProduct API on URL: {}", url);
+        return withDeadline(productRequests.coalesce(productId,
+                        () -> productHedger.hedge(() -> requestProduct(productId))))
+                .doOnError(NotFoundException.class, ex -> notFoundProductCache.put(productId, ex.getMessage()));
+    }
 
-        return webClient.get()
+    public Flux<Recommendation> getRecommendations(int productId){
+        return orEmpty(withDeadline(recommendationRequests.coalesceMany(productId,
+                () -> recommendationHedger.hedge(() -> requestRecommendationList(productId))
+                        .flatMapIterable(recommendations -> recommendations))));
+    }
+
+    // Pages are requested directly, only full lists are coalesced
+    public Flux<Recommendation> getRecommendations(int productId, Integer afterRecommendationId, Integer limit){
+        if (afterRecommendationId == null && limit == null) {
+            return getRecommendations(productId);
+        }
+        return orEmpty(withDeadline(requestRecommendations(productId, afterRecommendationId, limit)));
+    }
+
+    public Flux<Review> getReviews(int productId) {
+        return orEmpty(withDeadline(reviewRequests.coalesceMany(productId,
+                () -> reviewHedger.hedge(() -> requestReviewList(productId))
+                        .flatMapIterable(reviews -> reviews))));
+    }
+
+    public Flux<Review> getReviews(int productId, Integer afterReviewId, Integer limit) {
+        if (afterReviewId == null && limit == null) {
+            return getReviews(productId);
+        }
+        return orEmpty(withDeadline(requestReviews(productId, afterReviewId, limit)));
+    }
+
+    // The signal the shared list request for the product terminates with, empty if none is in flight
+    public Mono<SignalType> whenRecommendationsTerminated(int productId) {
+        return recommendationRequests.whenTerminated(productId);
+    }
+
+    public Mono<SignalType> whenReviewsTerminated(int productId) {
+        return reviewRequests.whenTerminated(productId);
+    }
+
+    // Streams are not coalesced since sharing them would buffer the whole list for late subscribers
+    public Flux<Recommendation> streamRecommendations(int productId) {
+        return orEmpty(withDeadline(requestRecommendations(productId, null, null)));
+    }
+
+    public Flux<Review> streamReviews(int productId) {
+        return orEmpty(withDeadline(requestReviews(productId, null, null)));
+    }
+
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        String url = PRODUCT_SERVICE_URL + "/product?productIds=" + toQueryValue(productIds);
+        logger.debug("Calling getProducts API on URL: {}", url);
+
+        return withDeadline(protect(webClient.get()
                 .uri(url)
                 .retrieve()
-                .bodyToMono(Product.class)
+                .bodyToFlux(Product.class)
                 .log(logger.getName(), FINE)
-                .onErrorMap(WebClientResponseException.class, ex -> handleException(ex));
+                .onErrorMap(WebClientResponseException.class, ex -> handleException(ex)),
+                productCircuitBreaker, productBulkhead));
     }
 
-    public Flux<Recommendation> getRecommendations(int productId){
+    public Flux<Recommendation> getRecommendationsByProductIds(List<Integer> productIds) {
+        String url = RECOMMENDATION_SERVICE_URL + "/recommendation?productIds=" + toQueryValue(productIds);
+        logger.debug("Calling getRecommendationsByProductIds API on URL: {}", url);
+
+        return orEmpty(withDeadline(protect(webClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Recommendation.class)
+                .log(logger.getName(), FINE), recommendationCircuitBreaker, recommendationBulkhead)));
+    }
+
+    public Flux<Review> getReviewsByProductIds(List<Integer> productIds) {
+        String url = REVIEW_SERVICE_URL + "/review?productIds=" + toQueryValue(productIds);
+        logger.debug("Calling getReviewsByProductIds API on URL: {}", url);
+
+        return orEmpty(withDeadline(protect(webClient.get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .log(logger.getName(), FINE), reviewCircuitBreaker, reviewBulkhead)));
+    }
+
+    private Mono<Product> requestProduct(int productId){
+        String url = PRODUCT_SERVICE_URL +  "/product/" + productId;
+        logger.debug("Calling getProduct API on URL: {}", url);
+
+        return protect(getConditionally(url, PRODUCT_TYPE)
+                .log(logger.getName(), FINE)
+                .onErrorMap(WebClientResponseException.class, ex -> handleException(ex)),
+                productCircuitBreaker, productBulkhead);
+    }
+
+    private Mono<List<Recommendation>> requestRecommendationList(int productId) {
         String url = RECOMMENDATION_SERVICE_URL + "/recommendation?productId=" + productId;
         logger.debug("Calling getRecommendations API on URL: {}", url);
 
-        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
-        Flux<Recommendation> recommendationFlux = webClient.get()
+        return protect(getConditionally(url, RECOMMENDATION_LIST_TYPE)
+                .log(logger.getName(), FINE), recommendationCircuitBreaker, recommendationBulkhead);
+    }
+
+    private Mono<List<Review>> requestReviewList(int productId) {
+        String url = REVIEW_SERVICE_URL + "/review?productId=" + productId;
+        logger.debug("Calling getReviews API on URL: {}", url);
+
+        return protect(getConditionally(url, REVIEW_LIST_TYPE)
+                .log(logger.getName(), FINE), reviewCircuitBreaker, reviewBulkhead);
+    }
+
+    // Revalidates the cached response for the URL, if any, and serves a 304 from its body. Without a cached
+    // response NO_ETAG is sent, since the core services only return the ETag of a list for a conditional GET
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> getConditionally(String url, ParameterizedTypeReference<T> bodyType) {
+        return Mono.defer(() -> {
+            ConditionalResponseCache.CachedResponse cached = conditionalResponseCache.get(url);
+            return webClient.get()
+                    .uri(url)
+                    .headers(headers -> headers.setIfNoneMatch(cached != null ? cached.etag() : NO_ETAG))
+                    .exchangeToMono(response -> {
+                        if (cached != null && response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                            conditionalResponseCache.recordNotModified(url);
+                            return response.releaseBody().thenReturn((T) cached.body());
+                        }
+                        if (!response.statusCode().is2xxSuccessful()) {
+                            return response.createError();
+                        }
+                        String etag = response.headers().asHttpHeaders().getETag();
+                        return response.bodyToMono(bodyType)
+                                .doOnNext(body -> {
+                                    if (etag != null) {
+                                        conditionalResponseCache.put(url, etag, body);
+                                    }
+                                });
+                    });
+        });
+    }
+
+    private Flux<Recommendation> requestRecommendations(int productId, Integer afterRecommendationId, Integer limit){
+        String url = RECOMMENDATION_SERVICE_URL + "/recommendation?productId=" + productId
+                + toPageQuery("afterRecommendationId", afterRecommendationId, limit);
+        logger.debug("Calling getRecommendations API on URL: {}", url);
+
+        Flux<Recommendation> recommendationFlux = protect(webClient.get()
                 .uri(url)
                 .retrieve()
                 .bodyToFlux(Recommendation.class)
-                .log(logger.getName(), FINE)
-                .onErrorResume(error -> empty());
+                .log(logger.getName(), FINE), recommendationCircuitBreaker, recommendationBulkhead);
 
         logger.debug("getRecommendations - returned recommendations for URL: {}", url);
         return  recommendationFlux;
     }
 
-    public Flux<Review> getReviews(int productId) {
-        String url = REVIEW_SERVICE_URL + "/review?productId=" + productId;
+    private Flux<Review> requestReviews(int productId, Integer afterReviewId, Integer limit) {
+        String url = REVIEW_SERVICE_URL + "/review?productId=" + productId
+                + toPageQuery("afterReviewId", afterReviewId, limit);
         logger.debug("Calling getReviews API on URL: {}", url);
 
-        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
-        Flux<Review> reviewsFlux = webClient.get()
+        Flux<Review> reviewsFlux = protect(webClient.get()
                 .uri(url)
                 .retrieve()
                 .bodyToFlux(Review.class)
-                .log(logger.getName(), FINE)
-                .onErrorResume(error -> empty());
+                .log(logger.getName(), FINE), reviewCircuitBreaker, reviewBulkhead);
 
         logger.debug("getReviews - returned reviews for URL: {}", url);
         return  reviewsFlux;
@@ -196,6 +391,65 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         return reviewMono;
     }
 
+    private String toPageQuery(String cursorName, Integer cursor, Integer limit) {
+        return ((cursor == null) ? "" : "&" + cursorName + "=" + cursor)
+                + ((limit == null) ? "" : "&limit=" + limit);
+    }
+
+    private String toQueryValue(List<Integer> productIds) {
+        return productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    // A call fails fast with a ServiceUnavailableException while the circuit breaker of its core service
+    // is open or its bulkhead is full. Calls that time out after callTimeout count as failures of the core service.
+    private <T> Mono<T> protect(Mono<T> call, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        return call.timeout(requestDeadline.getCallTimeout())
+                .transform(BulkheadOperator.of(bulkhead))
+                .transform(CircuitBreakerOperator.of(circuitBreaker))
+                .onErrorMap(ProductCompositeIntegration::isRejected, this::handleException);
+    }
+
+    private <T> Flux<T> protect(Flux<T> call, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        return call.timeout(requestDeadline.getCallTimeout())
+                .transform(BulkheadOperator.of(bulkhead))
+                .transform(CircuitBreakerOperator.of(circuitBreaker))
+                .onErrorMap(ProductCompositeIntegration::isRejected, this::handleException);
+    }
+
+    private static boolean isRejected(Throwable exception) {
+        return exception instanceof CallNotPermittedException || exception instanceof BulkheadFullException;
+    }
+
+    private <T> Mono<T> withDeadline(Mono<T> mono) {
+        return Mono.deferContextual(ctx -> mono.timeout(requestDeadline.remaining(ctx)));
+    }
+
+    private <T> Flux<T> withDeadline(Flux<T> flux) {
+        // Every element restarts the timeout with what is left until the deadline of the whole list
+        return Flux.deferContextual(ctx -> {
+            long deadline = System.nanoTime() + requestDeadline.remaining(ctx).toNanos();
+            return flux.timeout(
+                    Mono.delay(untilDeadline(deadline)),
+                    element -> Mono.delay(untilDeadline(deadline)));
+        });
+    }
+
+    // Return an empty result if something goes wrong, including a missed deadline, to make it possible
+    // for the composite service to return partial responses. The response is marked as partial.
+    private <T> Flux<T> orEmpty(Flux<T> flux) {
+        return flux.onErrorResume(ex -> Flux.deferContextual(ctx -> {
+            if (ex instanceof TimeoutException) {
+                logger.warn("A downstream call missed its deadline, returning an empty list");
+            }
+            PartialResponse.markPartial(ctx);
+            return empty();
+        }));
+    }
+
+    private static Duration untilDeadline(long deadline) {
+        return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+    }
+
     private String getErrorMessage(WebClientResponseException exception) {
         try {
             return mapper.readValue(exception.getResponseBodyAsString(), HttpErrorInfo.class).getMessage();
@@ -206,6 +460,10 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     private Throwable handleException(Throwable exception) {
 
+        if (isRejected(exception)) {
+            return ServiceUnavailableException.withoutStackTrace(exception.getMessage());
+        }
+
         if (!(exception instanceof WebClientResponseException)) {
             logger.warn("Got a unexpected error: {}, will rethrow it", exception.toString());
             return exception;
@@ -216,10 +474,10 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         switch (Objects.requireNonNull(HttpStatus.resolve(webClientResponseException.getStatusCode().value()))) {
 
             case NOT_FOUND:
-                return new NotFoundException(getErrorMessage(webClientResponseException));
+                return NotFoundException.withoutStackTrace(getErrorMessage(webClientResponseException));
 
             case UNPROCESSABLE_ENTITY:
-                return new InvalidInputException(getErrorMessage(webClientResponseException));
+                return InvalidInputException.withoutStackTrace(getErrorMessage(webClientResponseException));
 
             default:
                 logger.warn("Got an unexpected HTTP error: {}, will rethrow it", webClientResponseException.getStatusCode());
@@ -229,21 +487,24 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     }
 
     private void sendMessage(String bindingName, Event event) {
-        logger.debug("Sending a {} message to {}", event.getEventType(), bindingName);
-        Message<Event> message = MessageBuilder.withPayload(event)
-                .setHeader("partitionKey", event.getKey())
-                .build();
-        streamBridge.send(bindingName, message);
+        eventOutbox.send(bindingName, event);
+
+        // Any CREATE or DELETE for a product makes its cached aggregate stale, and after a CREATE the
+        // product may no longer be missing. Every instance invalidates again when it consumes the event
+        productAggregateCache.invalidate((Integer) event.getKey());
+        if (event.getEventType() == CREATE) {
+            notFoundProductCache.invalidate((Integer) event.getKey());
+        }
     }
 
-    private Mono<Health> getHealth(String url) {
+    private Mono<Health> getHealth(String url, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
         url += "/actuator/health";
         logger.debug("Calling the health API on URL: {}", url);
 
-        return webClient.get()
+        return protect(webClient.get()
                 .uri(url)
                 .retrieve()
-                .bodyToMono(String.class)
+                .bodyToMono(String.class), circuitBreaker, bulkhead)
                 .map(s -> new Health.Builder().up().build())
                 .onErrorResume(ex -> Mono.just(new Health.Builder().down(ex).build()))
                 .log(logger.getName(), FINE);
@@ -4,21 +4,28 @@ import com.akt.api.composite.product.*;
 import com.akt.api.core.product.Product;
 import com.akt.api.core.recommendation.Recommendation;
 import com.akt.api.core.review.Review;
+import com.akt.api.exceptions.InvalidInputException;
+import com.akt.api.exceptions.NotFoundException;
 import com.akt.util.http.ServiceUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextImpl;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static java.util.logging.Level.FINE;
@@ -32,28 +39,75 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
     private final ServiceUtil serviceUtil;
     private ProductCompositeIntegration productCompositeIntegration;
+    private final ProductAggregateCache productAggregateCache;
+    private final NotFoundProductCache notFoundProductCache;
+    private final ProductFetchStrategy productFetchStrategy;
+    private final MeterRegistry meterRegistry;
+    private final int maxProductIds;
 
     @Autowired
     public ProductCompositeServiceImpl(ServiceUtil serviceUtil,
-                                       ProductCompositeIntegration productCompositeIntegration) {
+                                       ProductCompositeIntegration productCompositeIntegration,
+                                       ProductAggregateCache productAggregateCache,
+                                       NotFoundProductCache notFoundProductCache,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.productFetch.strategy:parallel}") ProductFetchStrategy productFetchStrategy,
+                                       @Value("${app.maxProductIds:100}") int maxProductIds) {
         this.serviceUtil = serviceUtil;
         this.productCompositeIntegration = productCompositeIntegration;
+        this.productAggregateCache = productAggregateCache;
+        this.notFoundProductCache = notFoundProductCache;
+        this.productFetchStrategy = productFetchStrategy;
+        this.meterRegistry = meterRegistry;
+        this.maxProductIds = maxProductIds;
+
+        logger.info("Fetching products with the {} strategy", productFetchStrategy);
+        for (String call : List.of("recommendations", "reviews")) {
+            wastedCallCounter(call, "completed");
+            wastedCallCounter(call, "failed");
+            wastedCallCounter(call, "cancelled");
+        }
     }
 
     @Override
-    public Mono<ProductAggregate> getProduct(int productId) {
+    public Mono<ProductAggregate> getProduct(int productId,
+                                             Integer afterRecommendationId,
+                                             Integer recommendationLimit,
+                                             Integer afterReviewId,
+                                             Integer reviewLimit) {
         logger.debug("getProduct: getting composite aggregate for productId: {}", productId);
 
-        Mono<ProductAggregate> productAggregateMono = Mono.zip(values -> createProductAggregate(
-                                (SecurityContext) values[0],
-                                (Product) values[1],
-                                (List<Recommendation>) values[2],
-                                (List<Review>) values[3],
-                                serviceUtil.getServiceAddress()),
-                        getSecurityContextMono(),
-                        productCompositeIntegration.getProduct(productId),
-                        productCompositeIntegration.getRecommendations(productId).collectList(),
-                        productCompositeIntegration.getReviews(productId).collectList())
+        // Only complete aggregates are cached, pages are always read from the core services
+        boolean fullAggregate = afterRecommendationId == null && recommendationLimit == null
+                && afterReviewId == null && reviewLimit == null;
+
+        ProductAggregate cachedAggregate = fullAggregate ? productAggregateCache.get(productId) : null;
+        if (cachedAggregate != null) {
+            logger.debug("getProduct: returning cached composite aggregate for productId: {}", productId);
+            return getLogAuthorizationInfoMono().map(sc -> cachedAggregate);
+        }
+
+        // A product that was just reported missing fails without calling any of the core services
+        String notFoundMessage = notFoundProductCache.getMessage(productId);
+        if (notFoundMessage != null) {
+            logger.debug("getProduct: productId: {} is cached as not found", productId);
+            return Mono.error(NotFoundException.withoutStackTrace(notFoundMessage));
+        }
+
+        Mono<List<Recommendation>> recommendationsMono = Mono.defer(
+                () -> getRecommendations(productId, afterRecommendationId, recommendationLimit).collectList());
+        Mono<List<Review>> reviewsMono = Mono.defer(
+                () -> getReviews(productId, afterReviewId, reviewLimit).collectList());
+
+        // An aggregate that left out recommendations or reviews because their call failed is not cached
+        PartialResponse partialResponse = new PartialResponse();
+        Mono<ProductAggregate> productAggregateMono = fetchProductAggregate(productId, recommendationsMono, reviewsMono)
+                .doOnNext(productAggregate -> {
+                    if (fullAggregate && !partialResponse.isPartial()) {
+                        productAggregateCache.put(productAggregate);
+                    }
+                })
+                .contextWrite(partialResponse::register)
                 .doOnError(ex -> logger.warn("getCompositeProduct failed: {}", ex.toString()))
                 .log(logger.getName(), FINE);
 
@@ -61,6 +115,96 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         return productAggregateMono;
     }
 
+    @Override
+    public Flux<ProductAggregateItem> getProductStream(int productId) {
+        logger.debug("getProductStream: streaming composite aggregate for productId: {}", productId);
+
+        String notFoundMessage = notFoundProductCache.getMessage(productId);
+        if (notFoundMessage != null) {
+            logger.debug("getProductStream: productId: {} is cached as not found", productId);
+            return Flux.error(NotFoundException.withoutStackTrace(notFoundMessage));
+        }
+
+        // Emit the product first, then recommendations and reviews as they arrive without collecting them
+        Flux<ProductAggregateItem> itemFlux = getLogAuthorizationInfoMono()
+                .then(productCompositeIntegration.getProduct(productId))
+                .flatMapMany(product -> Flux.concat(
+                        Mono.just(new ProductAggregateItem(
+                                createProductAggregate(product, null, null, serviceUtil.getServiceAddress()))),
+                        Flux.merge(
+                                productCompositeIntegration.streamRecommendations(productId)
+                                        .map(r -> new ProductAggregateItem(toRecommendationSummary(r))),
+                                productCompositeIntegration.streamReviews(productId)
+                                        .map(r -> new ProductAggregateItem(toReviewSummary(r))))))
+                .doOnError(ex -> logger.warn("getCompositeProductStream failed: {}", ex.toString()))
+                .log(logger.getName(), FINE);
+
+        logger.debug("getProductStream: composite stream returned for productId: {}", productId);
+        return itemFlux;
+    }
+
+    @Override
+    public Flux<ProductAggregate> getProducts(List<Integer> productIds) {
+        logger.debug("getProducts: getting composite aggregates for {} productIds", productIds.size());
+
+        if (productIds.size() > maxProductIds) {
+            return Flux.error(InvalidInputException.withoutStackTrace(
+                    "Too many productIds: " + productIds.size() + ", at most " + maxProductIds + " are allowed"));
+        }
+
+        List<Integer> requestedIds = productIds.stream().distinct().collect(Collectors.toList());
+
+        Mono<Map<Integer, ProductAggregate>> aggregatesMono = Mono.defer(() -> {
+            // Serve what we can from the cache and fetch the rest with one batched call per core service,
+            // products cached as not found are left out without asking for them
+            Map<Integer, ProductAggregate> aggregates = new HashMap<>();
+            List<Integer> missingIds = new ArrayList<>();
+            requestedIds.forEach(productId -> {
+                ProductAggregate cachedAggregate = productAggregateCache.get(productId);
+                if (cachedAggregate != null) {
+                    aggregates.put(productId, cachedAggregate);
+                } else if (notFoundProductCache.getMessage(productId) == null) {
+                    missingIds.add(productId);
+                }
+            });
+
+            if (missingIds.isEmpty()) {
+                return getLogAuthorizationInfoMono().map(sc -> aggregates);
+            }
+
+            PartialResponse partialResponse = new PartialResponse();
+            return Mono.zip(values -> createProductAggregates(
+                                    (SecurityContext) values[0],
+                                    (List<Product>) values[1],
+                                    (Map<Integer, Collection<Recommendation>>) values[2],
+                                    (Map<Integer, Collection<Review>>) values[3],
+                                    aggregates,
+                                    !partialResponse.isPartial()),
+                            getSecurityContextMono(),
+                            productCompositeIntegration.getProducts(missingIds).collectList(),
+                            productCompositeIntegration.getRecommendationsByProductIds(missingIds).collectMultimap(Recommendation::getProductId),
+                            productCompositeIntegration.getReviewsByProductIds(missingIds).collectMultimap(Review::getProductId))
+                    .contextWrite(partialResponse::register);
+        });
+
+        // Keep the requested order, products that were not found are left out and reported, see NotFoundProductIds
+        Flux<ProductAggregate> productAggregateFlux = aggregatesMono
+                .flatMapMany(found -> Flux.deferContextual(ctx -> {
+                    NotFoundProductIds.record(ctx, requestedIds.stream()
+                            .filter(productId -> !found.containsKey(productId))
+                            .collect(Collectors.toList()));
+                    return Flux.fromIterable(requestedIds.stream()
+                            .filter(found::containsKey)
+                            .map(found::get)
+                            .collect(Collectors.toList()));
+                }))
+                .doOnError(ex -> logger.warn("getCompositeProducts failed: {}", ex.toString()))
+                .log(logger.getName(), FINE);
+
+        logger.debug("getProducts: composite entities returned for {} productIds", requestedIds.size());
+        return productAggregateFlux;
+    }
+
     @Override
     public Mono<Void> createProduct(ProductAggregate body) {
 
@@ -122,6 +266,109 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         }
     }
 
+    private Mono<ProductAggregate> fetchProductAggregate(
+            int productId,
+            Mono<List<Recommendation>> recommendationsMono,
+            Mono<List<Review>> reviewsMono) {
+
+        if (productFetchStrategy == ProductFetchStrategy.PRODUCT_FIRST) {
+            return productCompositeIntegration.getProduct(productId)
+                    .flatMap(product -> Mono.zip(values -> createProductAggregate(
+                                    (SecurityContext) values[0],
+                                    product,
+                                    (List<Recommendation>) values[1],
+                                    (List<Review>) values[2],
+                                    serviceUtil.getServiceAddress()),
+                            getSecurityContextMono(),
+                            recommendationsMono,
+                            reviewsMono));
+        }
+
+        // When the product call fails, list calls that were sent for nothing are counted as wasted, by how they
+        // ended. With PARALLEL the unfinished ones run on, with PARALLEL_WITH_CANCEL they are cancelled unless shared.
+        AtomicBoolean recommendationsDone = new AtomicBoolean();
+        AtomicBoolean reviewsDone = new AtomicBoolean();
+        Mono<Product> productMono = productCompositeIntegration.getProduct(productId)
+                .doOnError(ex -> {
+                    countWastedCall("recommendations", recommendationsDone,
+                            productCompositeIntegration.whenRecommendationsTerminated(productId));
+                    countWastedCall("reviews", reviewsDone,
+                            productCompositeIntegration.whenReviewsTerminated(productId));
+                });
+
+        return Mono.zip(values -> createProductAggregate(
+                        (SecurityContext) values[0],
+                        (Product) values[1],
+                        (List<Recommendation>) values[2],
+                        (List<Review>) values[3],
+                        serviceUtil.getServiceAddress()),
+                getSecurityContextMono(),
+                productMono,
+                recommendationsMono.doOnSuccess(recommendations -> recommendationsDone.set(true)),
+                reviewsMono.doOnSuccess(reviews -> reviewsDone.set(true)));
+    }
+
+    // A call still in flight is counted once its shared request terminates. Calls that aren't shared,
+    // like pages, are cancelled together with the aggregate.
+    private void countWastedCall(String call, AtomicBoolean done, Mono<SignalType> terminated) {
+        if (done.get()) {
+            wastedCallCounter(call, "completed").increment();
+            return;
+        }
+        terminated
+                .switchIfEmpty(Mono.fromSupplier(() -> done.get() ? SignalType.ON_COMPLETE : SignalType.CANCEL))
+                .subscribe(signal -> wastedCallCounter(call, outcome(signal)).increment());
+    }
+
+    private static String outcome(SignalType signal) {
+        switch (signal) {
+            case ON_COMPLETE:
+                return "completed";
+            case ON_ERROR:
+                return "failed";
+            default:
+                return "cancelled";
+        }
+    }
+
+    private Counter wastedCallCounter(String call, String outcome) {
+        return Counter.builder("composite.downstream.wasted")
+                .description("Downstream calls sent for a product that turned out to be missing or failed")
+                .tag("strategy", productFetchStrategy.name().toLowerCase())
+                .tag("call", call)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private Map<Integer, ProductAggregate> createProductAggregates(
+            SecurityContext sc,
+            List<Product> products,
+            Map<Integer, Collection<Recommendation>> recommendations,
+            Map<Integer, Collection<Review>> reviews,
+            Map<Integer, ProductAggregate> aggregates,
+            boolean cacheable) {
+
+        logAuthorizationInfo(sc);
+
+        // Missing recommendations and reviews become empty lists, as for a single product.
+        // The aggregates are only cached when both list calls succeeded.
+        String serviceAddress = serviceUtil.getServiceAddress();
+        products.forEach(product -> {
+            int productId = product.getProductId();
+            ProductAggregate productAggregate = createProductAggregate(product,
+                    new ArrayList<>(recommendations.getOrDefault(productId, Collections.emptyList())),
+                    new ArrayList<>(reviews.getOrDefault(productId, Collections.emptyList())),
+                    serviceAddress);
+
+            if (cacheable) {
+                productAggregateCache.put(productAggregate);
+            }
+            aggregates.put(productId, productAggregate);
+        });
+
+        return aggregates;
+    }
+
     private ProductAggregate createProductAggregate(
             SecurityContext sc,
             Product product,
@@ -131,6 +378,15 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
         logAuthorizationInfo(sc);
 
+        return createProductAggregate(product, recommendations, reviews, serviceAddress);
+    }
+
+    private ProductAggregate createProductAggregate(
+            Product product,
+            List<Recommendation> recommendations,
+            List<Review> reviews,
+            String serviceAddress) {
+
         // Product information
         int productId = product.getProductId();
         String name = product.getName();
@@ -139,15 +395,13 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         // Recommendations
         List<RecommendationSummary> recommendationSummaries =
                 (recommendations == null) ? null : recommendations.stream()
-                        .map(r -> new RecommendationSummary(r.getRecommendationId(),
-                                r.getAuthor(), r.getRating(), r.getContent()))
+                        .map(r -> toRecommendationSummary(r))
                         .collect(Collectors.toList());
 
         // Reviews
         List<ReviewSummary> reviewSummaries =
                 (reviews == null) ? null : reviews.stream()
-                        .map(r -> new ReviewSummary(r.getReviewId(),
-                                r.getAuthor(), r.getSubject(), r.getContent()))
+                        .map(r -> toReviewSummary(r))
                         .collect(Collectors.toList());
 
         // Service Addresses
@@ -160,6 +414,28 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
     }
 
+    private Flux<Recommendation> getRecommendations(int productId, Integer afterRecommendationId, Integer limit) {
+        return (afterRecommendationId == null && limit == null)
+                ? productCompositeIntegration.getRecommendations(productId)
+                : productCompositeIntegration.getRecommendations(productId, afterRecommendationId, limit);
+    }
+
+    private Flux<Review> getReviews(int productId, Integer afterReviewId, Integer limit) {
+        return (afterReviewId == null && limit == null)
+                ? productCompositeIntegration.getReviews(productId)
+                : productCompositeIntegration.getReviews(productId, afterReviewId, limit);
+    }
+
+    private RecommendationSummary toRecommendationSummary(Recommendation recommendation) {
+        return new RecommendationSummary(recommendation.getRecommendationId(),
+                recommendation.getAuthor(), recommendation.getRating(), recommendation.getContent());
+    }
+
+    private ReviewSummary toReviewSummary(Review review) {
+        return new ReviewSummary(review.getReviewId(),
+                review.getAuthor(), review.getSubject(), review.getContent());
+    }
+
     private void logAuthorizationInfo(SecurityContext sc) {
         if(sc != null && sc.getAuthentication() != null && sc.getAuthentication() instanceof JwtAuthenticationToken) {
             Jwt jwtToken = ((JwtAuthenticationToken)sc.getAuthentication()).getToken();
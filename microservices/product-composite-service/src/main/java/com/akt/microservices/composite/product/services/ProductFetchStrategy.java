@@ -0,0 +1,25 @@
+package com.akt.microservices.composite.product.services;
+
+/**
+ * How getProduct fetches a product and its recommendations and reviews, set with app.productFetch.strategy.
+ */
+public enum ProductFetchStrategy {
+
+    /**
+     * All three calls are sent at once. When the product call fails, the recommendation and review
+     * requests already sent still run to completion.
+     */
+    PARALLEL,
+
+    /**
+     * Recommendations and reviews are only requested once the product is found, which adds the
+     * latency of the product call to every request but sends nothing else for a missing product.
+     */
+    PRODUCT_FIRST,
+
+    /**
+     * All three calls are sent at once, and the recommendation and review requests are cancelled as
+     * soon as the product call fails, unless another caller shares them.
+     */
+    PARALLEL_WITH_CANCEL
+}
@@ -0,0 +1,96 @@
+package com.akt.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight wrapper for a downstream call: concurrent subscribers asking for the same key
+ * share one in-flight request and all receive its result. The key is released as soon as
+ * the shared request terminates, so later callers always trigger a fresh request.
+ *
+ * By default a shared request runs to completion even if all its subscribers cancel. With
+ * cancelWhenUnused, a shared list request is cancelled as soon as its last subscriber cancels.
+ * How a shared request ended can be awaited with {@link #whenTerminated}.
+ *
+ * Counts of originated and coalesced calls are published as "composite.downstream.calls".
+ */
+public class RequestCoalescer<K, T> {
+
+    private final ConcurrentMap<K, InFlightRequest<T>> inFlightRequests = new ConcurrentHashMap<>();
+    private final boolean cancelWhenUnused;
+
+    private final Counter originatedCounter;
+    private final Counter coalescedCounter;
+
+    public RequestCoalescer(String callName, MeterRegistry meterRegistry) {
+        this(callName, false, meterRegistry);
+    }
+
+    public RequestCoalescer(String callName, boolean cancelWhenUnused, MeterRegistry meterRegistry) {
+        this.cancelWhenUnused = cancelWhenUnused;
+        this.originatedCounter = Counter.builder("composite.downstream.calls")
+                .description("Downstream calls sent by the composite service")
+                .tag("call", callName)
+                .tag("type", "originated")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("composite.downstream.calls")
+                .description("Downstream calls answered by an already in-flight request")
+                .tag("call", callName)
+                .tag("type", "coalesced")
+                .register(meterRegistry);
+    }
+
+    public Mono<T> coalesce(K key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> Mono.from(share(key,
+                onTerminate -> call.get().doFinally(onTerminate).cache())));
+    }
+
+    public Flux<T> coalesceMany(K key, Supplier<Flux<T>> call) {
+        return Flux.defer(() -> share(key, onTerminate -> {
+            Flux<T> request = call.get().doFinally(onTerminate);
+            return cancelWhenUnused ? request.replay().refCount() : request.cache();
+        }));
+    }
+
+    /**
+     * Returns the signal the request in flight for the key terminates with, i.e. ON_COMPLETE, ON_ERROR
+     * or CANCEL, once it terminates, or an empty Mono if no request is in flight for the key.
+     */
+    public Mono<SignalType> whenTerminated(K key) {
+        InFlightRequest<T> inFlightRequest = inFlightRequests.get(key);
+        return inFlightRequest != null ? inFlightRequest.terminated().asMono() : Mono.empty();
+    }
+
+    private Publisher<T> share(K key, Function<Consumer<SignalType>, Publisher<T>> sharedCall) {
+        boolean[] originated = {false};
+        Publisher<T> sharedRequest = inFlightRequests.computeIfAbsent(key, k -> {
+            originated[0] = true;
+            Sinks.One<SignalType> terminated = Sinks.one();
+            return new InFlightRequest<>(sharedCall.apply(signal -> {
+                inFlightRequests.remove(key);
+                terminated.tryEmitValue(signal);
+            }), terminated);
+        }).request();
+
+        if (originated[0]) {
+            originatedCounter.increment();
+        } else {
+            coalescedCounter.increment();
+        }
+        return sharedRequest;
+    }
+
+    private record InFlightRequest<T>(Publisher<T> request, Sinks.One<SignalType> terminated) {
+    }
+}
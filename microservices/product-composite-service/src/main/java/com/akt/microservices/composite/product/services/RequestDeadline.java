@@ -0,0 +1,60 @@
+package com.akt.microservices.composite.product.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+
+/**
+ * Gives every request to the composite service a deadline of requestBudget from its arrival,
+ * carried in the Reactor context of the request. A downstream call made while serving the request
+ * may take whatever is left of the budget, but at most callTimeout. Calls made outside a request
+ * get callTimeout.
+ */
+@Component
+public class RequestDeadline implements WebFilter {
+
+    private static final String DEADLINE_KEY = RequestDeadline.class.getName() + ".deadline";
+
+    private final Duration requestBudget;
+    private final Duration callTimeout;
+
+    @Autowired
+    public RequestDeadline(DownstreamProperties downstreamProperties) {
+        this.requestBudget = downstreamProperties.getRequestBudget();
+        this.callTimeout = downstreamProperties.getCallTimeout();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return chain.filter(exchange).contextWrite(this::startRequest);
+    }
+
+    /**
+     * Returns the given context with a deadline of requestBudget from now.
+     */
+    public Context startRequest(Context ctx) {
+        return ctx.put(DEADLINE_KEY, System.nanoTime() + requestBudget.toNanos());
+    }
+
+    public Duration getCallTimeout() {
+        return callTimeout;
+    }
+
+    /**
+     * Returns the time a downstream call started now in the given context may take.
+     */
+    public Duration remaining(ContextView ctx) {
+        if (!ctx.hasKey(DEADLINE_KEY)) {
+            return callTimeout;
+        }
+        long remainingNanos = Math.max(0, ctx.<Long>get(DEADLINE_KEY) - System.nanoTime());
+        return remainingNanos < callTimeout.toNanos() ? Duration.ofNanos(remainingNanos) : callTimeout;
+    }
+}
@@ -0,0 +1,138 @@
+package com.akt.microservices.composite.product.services;
+
+import com.akt.api.exceptions.InvalidInputException;
+import com.akt.api.exceptions.NotFoundException;
+import com.akt.api.exceptions.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests for an idempotent downstream call: when the call hasn't answered after the
+ * hedge delay, a second identical call is sent and whichever answers first is used, the other
+ * one is cancelled. The load balancer picks instances round robin, so with more than one instance
+ * the second call normally goes to a different instance than the first.
+ *
+ * A call that fails, e.g. with a 5xx or a reset connection from a slow instance, leaves the answer
+ * to the other call, and the hedged call only fails when both calls fail. A 404, a 422, an open
+ * circuit breaker or a full bulkhead is what the second call would get as well, so they end the
+ * hedged call right away.
+ *
+ * The hedge delay is the configured percentile of the call's recent latency, kept within minDelay
+ * and maxDelay, so roughly the slowest (1 - percentile) of the calls are hedged. Until enough
+ * latencies are recorded, maxDelay is used.
+ *
+ * Call latencies are published as "composite.downstream.latency", sent hedges as
+ * "composite.downstream.hedge.fired" and hedges that answered first as "composite.downstream.hedge.won".
+ */
+public class RequestHedger {
+
+    private static final long MIN_SAMPLES = 100;
+    private static final long DELAY_REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+
+    private final Timer latencyTimer;
+    private final Counter firedCounter;
+    private final Counter wonCounter;
+
+    private volatile Duration delay;
+    private volatile long delayRefreshedAt;
+
+    public RequestHedger(String callName, DownstreamProperties.Hedging hedging, MeterRegistry meterRegistry) {
+        this.enabled = hedging.isEnabled();
+        this.percentile = hedging.getPercentile();
+        this.minDelay = hedging.getMinDelay();
+        this.maxDelay = hedging.getMaxDelay();
+        this.delay = maxDelay;
+        this.delayRefreshedAt = System.nanoTime();
+
+        this.latencyTimer = Timer.builder("composite.downstream.latency")
+                .description("Latency of successful downstream calls")
+                .tag("call", callName)
+                .publishPercentiles(percentile)
+                .register(meterRegistry);
+        this.firedCounter = Counter.builder("composite.downstream.hedge.fired")
+                .description("Hedged downstream calls sent because the first call was slow")
+                .tag("call", callName)
+                .register(meterRegistry);
+        this.wonCounter = Counter.builder("composite.downstream.hedge.won")
+                .description("Hedged downstream calls that answered before the first call")
+                .tag("call", callName)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> hedge(Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return timed(call);
+        }
+
+        return Mono.defer(() -> {
+            // Failures that leave the answer to the other call are kept to fail with when both calls fail
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Mono<Signal<T>> firstCall = timed(call).materialize()
+                    .filter(signal -> isAnswer(signal, failure));
+            Mono<Signal<T>> hedgedCall = Mono.delay(getDelay())
+                    .then(Mono.defer(() -> {
+                        firedCounter.increment();
+                        return timed(call).materialize();
+                    }))
+                    .filter(signal -> isAnswer(signal, failure))
+                    .doOnNext(signal -> wonCounter.increment());
+            return Mono.firstWithValue(firstCall, hedgedCall)
+                    .onErrorResume(NoSuchElementException.class, ex -> Mono.error(failure.get()))
+                    .dematerialize();
+        });
+    }
+
+    private static boolean isAnswer(Signal<?> signal, AtomicReference<Throwable> failure) {
+        Throwable error = signal.getThrowable();
+        if (error == null || error instanceof NotFoundException || error instanceof InvalidInputException
+                || error instanceof ServiceUnavailableException) {
+            return true;
+        }
+        failure.compareAndSet(null, error);
+        return false;
+    }
+
+    private Duration getDelay() {
+        long now = System.nanoTime();
+        if (now - delayRefreshedAt > DELAY_REFRESH_INTERVAL) {
+            delayRefreshedAt = now;
+            delay = computeDelay();
+        }
+        return delay;
+    }
+
+    private Duration computeDelay() {
+        if (latencyTimer.count() < MIN_SAMPLES) {
+            return maxDelay;
+        }
+        for (ValueAtPercentile value : latencyTimer.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                Duration latency = Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+                return latency.compareTo(minDelay) < 0 ? minDelay : latency.compareTo(maxDelay) > 0 ? maxDelay : latency;
+            }
+        }
+        return maxDelay;
+    }
+
+    private <T> Mono<T> timed(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            return call.get().doOnNext(result -> latencyTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS));
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.api.exceptions.ServiceUnavailableException;
+import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CircuitBreakerTests {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private ProductCompositeIntegration integration;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(1)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+
+        // Every core service instance hangs
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> {
+            calls.incrementAndGet();
+            return Mono.never();
+        });
+
+        integration = new IntegrationBuilder(webClientBuilder)
+                .circuitBreakerRegistry(circuitBreakerRegistry)
+                .bulkheadRegistry(bulkheadRegistry)
+                .build();
+    }
+
+    @Test
+    void openCircuitBreakerFailsCallsWithoutCallingTheService() {
+        circuitBreakerRegistry.circuitBreaker("product").transitionToOpenState();
+        circuitBreakerRegistry.circuitBreaker("recommendation").transitionToOpenState();
+
+        StepVerifier.create(integration.getProduct(1))
+                .verifyErrorMatches(error -> error instanceof ServiceUnavailableException
+                        && error.getMessage().equals("CircuitBreaker 'product' is OPEN and does not permit further calls"));
+        StepVerifier.create(integration.getRecommendations(1))
+                .verifyComplete();
+        StepVerifier.create(integration.getRecommendationHealth())
+                .expectNextMatches(health -> health.getStatus().equals(Status.DOWN))
+                .verifyComplete();
+
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void fullBulkheadOnlyFailsCallsToItsOwnService() {
+        Disposable pendingCall = integration.getProduct(1).subscribe(product -> {}, error -> {});
+
+        StepVerifier.create(integration.getProduct(2))
+                .verifyError(ServiceUnavailableException.class);
+        assertEquals(1, calls.get());
+
+        StepVerifier.create(integration.getReviews(2))
+                .expectSubscription()
+                .thenCancel()
+                .verify();
+        assertEquals(2, calls.get());
+
+        pendingCall.dispose();
+    }
+}
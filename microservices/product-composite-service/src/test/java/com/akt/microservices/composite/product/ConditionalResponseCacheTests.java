@@ -0,0 +1,83 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.api.core.product.Product;
+import com.akt.api.core.recommendation.Recommendation;
+import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.akt.util.http.ConditionalGetFilter.NO_ETAG;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConditionalResponseCacheTests {
+
+    private static final String ETAG = "\"1234\"";
+
+    private final List<String> sentETags = new CopyOnWriteArrayList<>();
+
+    private MeterRegistry meterRegistry;
+    private ProductCompositeIntegration integration;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+
+        // The stub core services answer with a 304 whenever the client sends their ETag
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> {
+            String ifNoneMatch = request.headers().getFirst("If-None-Match");
+            sentETags.add(String.valueOf(ifNoneMatch));
+            if (ETAG.equals(ifNoneMatch)) {
+                return Mono.just(ClientResponse.create(HttpStatus.NOT_MODIFIED).build());
+            }
+            String body = request.url().getPath().startsWith("/product")
+                    ? "{\"productId\":1,\"name\":\"name\",\"weight\":1}"
+                    : "[{\"productId\":1,\"recommendationId\":1,\"author\":\"author\",\"rating\":1,\"content\":\"content\"}]";
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header("Content-Type", "application/json")
+                    .header("ETag", ETAG)
+                    .body(body)
+                    .build());
+        });
+
+        integration = new IntegrationBuilder(webClientBuilder).meterRegistry(meterRegistry).build();
+    }
+
+    @Test
+    void unchangedProductIsServedFromTheCache() {
+        Product first = integration.getProduct(1).block();
+        Product second = integration.getProduct(1).block();
+
+        assertEquals("name", first.getName());
+        assertEquals("name", second.getName());
+        assertEquals(List.of(NO_ETAG, ETAG), sentETags);
+        assertEquals(1.0, meterRegistry.get("composite.downstream.not.modified").counter().count());
+    }
+
+    @Test
+    void unchangedListIsServedFromTheCache() {
+        List<Recommendation> first = integration.getRecommendations(1).collectList().block();
+        List<Recommendation> second = integration.getRecommendations(1).collectList().block();
+
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        assertEquals(List.of(NO_ETAG, ETAG), sentETags);
+    }
+
+    @Test
+    void pagesAreNotCached() {
+        integration.getRecommendations(1, 0, 10).collectList().block();
+        integration.getRecommendations(1, 0, 10).collectList().block();
+
+        assertEquals(List.of("null", "null"), sentETags);
+        assertEquals(0.0, meterRegistry.get("composite.downstream.not.modified").counter().count());
+    }
+}
@@ -0,0 +1,225 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.api.core.product.Product;
+import com.akt.api.event.Event;
+import com.akt.api.exceptions.ServiceUnavailableException;
+import com.akt.microservices.composite.product.services.EventOutbox;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static com.akt.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventOutboxTests {
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    private StreamBridge streamBridge;
+    private MeterRegistry meterRegistry;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        streamBridge = mock(StreamBridge.class);
+        when(streamBridge.send(anyString(), any())).thenReturn(true);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void eventsAreSentInBatchesAndInOrder() {
+        EventOutbox outbox = createOutbox(10, Duration.ofSeconds(10), "");
+
+        for (int i = 0; i < 25; i++) {
+            outbox.send("products-out-0", new Event<>(DELETE, i, null));
+        }
+        outbox.stop();
+
+        List<Message<Event<?, ?>>> messages = sentMessages(25);
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, messages.get(i).getPayload().getKey());
+            assertEquals(i, messages.get(i).getHeaders().get("partitionKey"));
+        }
+        assertEquals(3, meterRegistry.get("composite.outbox.batch.size").summary().count());
+        assertEquals(10.0, meterRegistry.get("composite.outbox.batch.size").summary().max());
+        assertEquals(25, meterRegistry.get("composite.outbox.latency").timer().count());
+    }
+
+    @Test
+    void partialBatchIsSentAfterLinger() {
+        EventOutbox outbox = createOutbox(100, Duration.ofMillis(10), "");
+
+        outbox.send("products-out-0", new Event<>(DELETE, 1, null));
+
+        verify(streamBridge, timeout(5000)).send(eq("products-out-0"), any());
+        outbox.stop();
+    }
+
+    @Test
+    void unsentEventsInTheFileAreSentAfterRestart() throws Exception {
+        Path file = tempDir.resolve("outbox.log");
+        Event<Integer, Product> sentEvent = new Event<>(CREATE, 1, new Product(1, "sent", 1, null));
+        Event<Integer, Product> unsentEvent = new Event<>(CREATE, 2, new Product(2, "unsent", 1, null));
+        Files.write(file, List.of(
+                "E 1 products-out-0 " + mapper.writeValueAsString(sentEvent),
+                "S 1",
+                "E 2 products-out-0 " + mapper.writeValueAsString(unsentEvent)));
+
+        EventOutbox outbox = createOutbox(100, Duration.ofMillis(10), file.toString());
+        outbox.send("products-out-0", new Event<>(DELETE, 3, null));
+        outbox.stop();
+
+        List<Message<Event<?, ?>>> messages = sentMessages(2);
+        assertEquals(2, messages.get(0).getPayload().getKey());
+        assertEquals(3, messages.get(1).getPayload().getKey());
+
+        // The file is compacted to the unsent events on start, and both are marked as sent once sent
+        List<String> records = Files.readAllLines(file);
+        assertEquals("E 2 products-out-0 " + mapper.writeValueAsString(unsentEvent), records.get(0));
+        assertEquals("E 3 products-out-0 " + mapper.writeValueAsString(messages.get(1).getPayload()), records.get(1));
+        assertEquals("S 3", records.get(records.size() - 1));
+    }
+
+    @Test
+    void fileIsRecoveredWhenTheOutboxStarts() throws Exception {
+        Path file = tempDir.resolve("outbox.log");
+        Files.write(file, List.of("E 1 products-out-0 " + mapper.writeValueAsString(new Event<>(DELETE, 1, null))));
+
+        EventOutbox outbox = createUnstartedOutbox(100, Duration.ofMillis(10), file.toString(), 10, 10000);
+        assertThrows(ServiceUnavailableException.class, () -> outbox.send("products-out-0", new Event<>(DELETE, 2, null)));
+        verify(streamBridge, never()).send(anyString(), any());
+
+        outbox.start();
+        outbox.stop();
+
+        assertEquals(1, sentMessages(1).get(0).getPayload().getKey());
+    }
+
+    @Test
+    void failedBatchIsResumedFromTheFirstUnsentEvent() {
+        when(streamBridge.send(anyString(), any())).thenReturn(true, true, false, true);
+        EventOutbox outbox = createOutbox(5, Duration.ofSeconds(10), "");
+
+        for (int i = 0; i < 5; i++) {
+            outbox.send("products-out-0", new Event<>(DELETE, i, null));
+        }
+        outbox.stop();
+
+        List<Message<Event<?, ?>>> messages = sentMessages(6);
+        assertEquals(List.of(0, 1, 2, 2, 3, 4), messages.stream().map(message -> message.getPayload().getKey()).toList());
+    }
+
+    @Test
+    void eventsAreGivenUpOnAfterMaxRetriesAndSentAgainAfterRestart() throws Exception {
+        Path file = tempDir.resolve("outbox.log");
+        when(streamBridge.send(anyString(), argThat((Message<?> message) -> ((Event<?, ?>) message.getPayload()).getKey().equals(1))))
+                .thenReturn(false);
+
+        // The first batch fails at its second event, the second batch is sent
+        EventOutbox outbox = createOutbox(3, Duration.ofSeconds(10), file.toString(), 1, 10000);
+        for (int i = 0; i < 4; i++) {
+            outbox.send("products-out-0", new Event<>(DELETE, i, null));
+        }
+        outbox.stop();
+        assertEquals(2.0, meterRegistry.get("composite.outbox.failed").counter().count());
+        assertEquals(0.0, meterRegistry.get("composite.outbox.pending").gauge().value());
+
+        doReturn(true).when(streamBridge).send(anyString(), any());
+        EventOutbox restartedOutbox = createOutbox(3, Duration.ofMillis(10), file.toString());
+        restartedOutbox.stop();
+
+        // The given up events follow the ones sent before the restart
+        List<Message<Event<?, ?>>> messages = sentMessages(6);
+        assertEquals(List.of(0, 1, 1, 3, 1, 2), messages.stream().map(message -> message.getPayload().getKey()).toList());
+    }
+
+    @Test
+    void batchIsConfirmedOnceAndResumedFromTheFirstRejectedEvent() {
+        AtomicBoolean rejected = new AtomicBoolean();
+        when(streamBridge.send(anyString(), any())).thenAnswer(invocation -> {
+            Message<?> message = invocation.getArgument(1);
+            CorrelationData correlation = message.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, CorrelationData.class);
+            boolean ack = !(((Event<?, ?>) message.getPayload()).getKey().equals(2) && rejected.compareAndSet(false, true));
+            correlation.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "rejected"));
+            return true;
+        });
+        EventOutbox outbox = new EventOutbox(streamBridge, Schedulers.boundedElastic(), mapper, meterRegistry,
+                true, 5, Duration.ofSeconds(10), 10, 10000, "", false, true, Duration.ofSeconds(5));
+        outbox.start();
+
+        for (int i = 0; i < 5; i++) {
+            outbox.send("products-out-0", new Event<>(DELETE, i, null));
+        }
+        outbox.stop();
+
+        // The whole batch is published before the confirms are checked, the retry starts at the rejected event
+        List<Message<Event<?, ?>>> messages = sentMessages(8);
+        assertEquals(List.of(0, 1, 2, 3, 4, 2, 3, 4), messages.stream().map(message -> message.getPayload().getKey()).toList());
+        assertEquals(0.0, meterRegistry.get("composite.outbox.failed").counter().count());
+    }
+
+    @Test
+    void eventsAreRejectedWhenTheOutboxIsFull() {
+        EventOutbox outbox = createOutbox(100, Duration.ofSeconds(10), "", 10, 2);
+
+        outbox.send("products-out-0", new Event<>(DELETE, 1, null));
+        outbox.send("products-out-0", new Event<>(DELETE, 2, null));
+        assertThrows(ServiceUnavailableException.class,
+                () -> outbox.send("products-out-0", new Event<>(DELETE, 3, null)));
+        outbox.stop();
+
+        sentMessages(2);
+    }
+
+    private EventOutbox createOutbox(int maxBatchSize, Duration linger, String file) {
+        return createOutbox(maxBatchSize, linger, file, 10, 10000);
+    }
+
+    private EventOutbox createOutbox(int maxBatchSize, Duration linger, String file, long maxRetries, int maxPending) {
+        EventOutbox outbox = createUnstartedOutbox(maxBatchSize, linger, file, maxRetries, maxPending);
+        outbox.start();
+        return outbox;
+    }
+
+    private EventOutbox createUnstartedOutbox(int maxBatchSize, Duration linger, String file, long maxRetries, int maxPending) {
+        return new EventOutbox(streamBridge, Schedulers.boundedElastic(), mapper, meterRegistry,
+                true, maxBatchSize, linger, maxRetries, maxPending, file, false, false, Duration.ofSeconds(5));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Message<Event<?, ?>>> sentMessages(int expectedCount) {
+        ArgumentCaptor<Message<Event<?, ?>>> captor = ArgumentCaptor.forClass(Message.class);
+        verify(streamBridge, times(expectedCount)).send(eq("products-out-0"), captor.capture());
+        return captor.getAllValues();
+    }
+}
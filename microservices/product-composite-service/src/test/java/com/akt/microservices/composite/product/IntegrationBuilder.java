@@ -0,0 +1,85 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.microservices.composite.product.services.ConditionalResponseCache;
+import com.akt.microservices.composite.product.services.DownstreamProperties;
+import com.akt.microservices.composite.product.services.EventOutbox;
+import com.akt.microservices.composite.product.services.NotFoundProductCache;
+import com.akt.microservices.composite.product.services.ProductAggregateCache;
+import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
+import com.akt.microservices.composite.product.services.ProductFetchStrategy;
+import com.akt.microservices.composite.product.services.RequestDeadline;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Builds a ProductCompositeIntegration that calls the core services through the given WebClient,
+ * with the defaults of application.yaml for everything that isn't set. Error bodies are read with an
+ * ObjectMapper configured like the one of the application context.
+ */
+class IntegrationBuilder {
+
+    private final WebClient.Builder webClientBuilder;
+
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DownstreamProperties downstreamProperties = new DownstreamProperties();
+    private CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    private BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+    private ProductAggregateCache productAggregateCache;
+    private NotFoundProductCache notFoundProductCache;
+
+    IntegrationBuilder(WebClient.Builder webClientBuilder) {
+        this.webClientBuilder = webClientBuilder;
+    }
+
+    IntegrationBuilder meterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        return this;
+    }
+
+    IntegrationBuilder downstreamProperties(DownstreamProperties downstreamProperties) {
+        this.downstreamProperties = downstreamProperties;
+        return this;
+    }
+
+    IntegrationBuilder circuitBreakerRegistry(CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        return this;
+    }
+
+    IntegrationBuilder bulkheadRegistry(BulkheadRegistry bulkheadRegistry) {
+        this.bulkheadRegistry = bulkheadRegistry;
+        return this;
+    }
+
+    IntegrationBuilder productAggregateCache(ProductAggregateCache productAggregateCache) {
+        this.productAggregateCache = productAggregateCache;
+        return this;
+    }
+
+    IntegrationBuilder notFoundProductCache(NotFoundProductCache notFoundProductCache) {
+        this.notFoundProductCache = notFoundProductCache;
+        return this;
+    }
+
+    ProductCompositeIntegration build() {
+        return new ProductCompositeIntegration(Schedulers.immediate(), webClientBuilder, Jackson2ObjectMapperBuilder.json().build(),
+                mock(EventOutbox.class),
+                productAggregateCache != null ? productAggregateCache
+                        : new ProductAggregateCache(100, Duration.ofSeconds(30), Duration.ofSeconds(5), meterRegistry),
+                notFoundProductCache != null ? notFoundProductCache
+                        : new NotFoundProductCache(100, Duration.ofSeconds(5), meterRegistry),
+                new ConditionalResponseCache(100, Duration.ofMinutes(10), meterRegistry),
+                new RequestDeadline(downstreamProperties),
+                circuitBreakerRegistry, bulkheadRegistry, meterRegistry, downstreamProperties,
+                ProductFetchStrategy.PARALLEL);
+    }
+}
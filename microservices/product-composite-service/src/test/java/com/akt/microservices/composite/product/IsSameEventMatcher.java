@@ -38,6 +38,7 @@ public class IsSameEventMatcher extends TypeSafeMatcher<String> {
         logger.trace("Converting the actual event json string to a map: {}", expectedEventAsJson);
         Map actualEventAsMap = convertJsonStringToMap(expectedEventAsJson);
         actualEventAsMap.remove("eventCreatedAt");
+        actualEventAsMap.remove("eventId");
         logger.trace("Created map of the actual event: {}", actualEventAsMap);
 
         Map expectedEventAsMap = getMapWithoutCreatedAt(expectedEvent);
@@ -71,6 +72,8 @@ public class IsSameEventMatcher extends TypeSafeMatcher<String> {
     private Map getMapWithoutCreatedAt(Event event) {
         Map mapEvent = convertObjectToMap(event);
         mapEvent.remove("eventCreatedAt");
+        // Every event gets a new id, it is not part of the content to compare
+        mapEvent.remove("eventId");
         return mapEvent;
     }
 
@@ -7,6 +7,7 @@ import com.akt.api.core.product.Product;
 import com.akt.api.core.recommendation.Recommendation;
 import com.akt.api.core.review.Review;
 import com.akt.api.event.Event;
+import com.akt.microservices.composite.product.services.NotFoundProductCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
@@ -30,6 +31,7 @@ import static java.util.Collections.singletonList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
@@ -40,7 +42,9 @@ import static reactor.core.publisher.Mono.just;
         properties = {
                 "eureka.client.enabled=false",
                 "spring.security.oauth2.resourceserver.jwt.issuer-uri=",
-                "spring.main.allow-bean-definition-overriding=true"})
+                "spring.main.allow-bean-definition-overriding=true",
+                // The test binder would hand the published events to the cache invalidator instead of the output destinations
+                "spring.cloud.stream.bindings.cacheInvalidator-in-0.destination=unused"})
 @Import({TestChannelBinderConfiguration.class})
 class MessagingTests {
 
@@ -52,6 +56,9 @@ class MessagingTests {
     @Autowired
     private OutputDestination target;
 
+    @Autowired
+    private NotFoundProductCache notFoundProductCache;
+
     @BeforeEach
     void setUp() {
         purgeMessages("products");
@@ -105,6 +112,16 @@ class MessagingTests {
         assertThat(reviewMessage, is(sameEventExceptCreatedAt(expectedReviewEvent)));
     }
 
+    @Test
+    void createCompositeProductInvalidatesNotFoundCache() {
+        notFoundProductCache.put(1, "NOT FOUND: 1");
+
+        postAndVerifyProduct(new ProductAggregate(1, "name", 2, null, null, null), ACCEPTED);
+
+        assertEquals(1, getMessages("products").size());
+        assertNull(notFoundProductCache.getMessage(1));
+    }
+
     @Test
     void createCompositeProductNoRecommendationsOrReviews() {
         ProductAggregate composite = new ProductAggregate(1, "name", 2, null, null, null);
@@ -0,0 +1,92 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.api.exceptions.NotFoundException;
+import com.akt.microservices.composite.product.services.NotFoundProductCache;
+import com.akt.microservices.composite.product.services.ProductAggregateCache;
+import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
+import com.akt.microservices.composite.product.services.ProductCompositeServiceImpl;
+import com.akt.util.http.ServiceUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.akt.microservices.composite.product.services.ProductFetchStrategy.PARALLEL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class NotFoundProductCacheTests {
+
+    private static final int PRODUCT_ID_NOT_FOUND = 13;
+    private static final String NOT_FOUND_MESSAGE = "No product found for productId: " + PRODUCT_ID_NOT_FOUND;
+
+    private final AtomicInteger downstreamCalls = new AtomicInteger();
+    private final AtomicInteger productCalls = new AtomicInteger();
+
+    private NotFoundProductCache notFoundProductCache;
+    private ProductCompositeServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ProductAggregateCache productAggregateCache =
+                new ProductAggregateCache(100, Duration.ofSeconds(30), Duration.ofSeconds(5), meterRegistry);
+        notFoundProductCache = new NotFoundProductCache(100, Duration.ofSeconds(5), meterRegistry);
+
+        // The product service answers with the 404 body written by the core services' exception handler
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> {
+            downstreamCalls.incrementAndGet();
+            String path = request.url().getPath();
+            if (path.startsWith("/product")) {
+                productCalls.incrementAndGet();
+                return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND)
+                        .header("Content-Type", "application/json")
+                        .body("{\"timestamp\":\"2024-01-01T00:00:00Z\",\"path\":\"" + path + "\",\"status\":404,"
+                                + "\"error\":\"Not Found\",\"message\":\"" + NOT_FOUND_MESSAGE + "\"}")
+                        .build());
+            }
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header("Content-Type", "application/json")
+                    .body("[]")
+                    .build());
+        });
+
+        ProductCompositeIntegration integration = new IntegrationBuilder(webClientBuilder)
+                .meterRegistry(meterRegistry)
+                .productAggregateCache(productAggregateCache)
+                .notFoundProductCache(notFoundProductCache)
+                .build();
+        service = new ProductCompositeServiceImpl(mock(ServiceUtil.class), integration,
+                productAggregateCache, notFoundProductCache, meterRegistry, PARALLEL, 100);
+    }
+
+    @Test
+    void notFoundProductIsNotRequestedAgain() {
+        StepVerifier.create(service.getProduct(PRODUCT_ID_NOT_FOUND, null, null, null, null))
+                .expectErrorSatisfies(ex -> {
+                    assertEquals(NotFoundException.class, ex.getClass());
+                    assertEquals(NOT_FOUND_MESSAGE, ex.getMessage());
+                })
+                .verify();
+        assertEquals(1, productCalls.get());
+        assertEquals(NOT_FOUND_MESSAGE, notFoundProductCache.getMessage(PRODUCT_ID_NOT_FOUND));
+
+        int callsAfterFirstLookup = downstreamCalls.get();
+        StepVerifier.create(service.getProduct(PRODUCT_ID_NOT_FOUND, null, null, null, null))
+                .expectErrorSatisfies(ex -> {
+                    assertEquals(NotFoundException.class, ex.getClass());
+                    assertEquals(NOT_FOUND_MESSAGE, ex.getMessage());
+                })
+                .verify();
+        assertEquals(callsAfterFirstLookup, downstreamCalls.get());
+        assertEquals(1, productCalls.get());
+    }
+}
@@ -0,0 +1,134 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.api.composite.product.ProductAggregate;
+import com.akt.api.event.Event;
+import com.akt.microservices.composite.product.services.CacheInvalidationConfig;
+import com.akt.microservices.composite.product.services.NotFoundProductCache;
+import com.akt.microservices.composite.product.services.ProductAggregateCache;
+import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
+import com.akt.microservices.composite.product.services.ProductCompositeServiceImpl;
+import com.akt.util.http.ServiceUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.akt.api.event.Event.Type.DELETE;
+import static com.akt.microservices.composite.product.services.ProductFetchStrategy.PARALLEL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class ProductAggregateCacheTests {
+
+    private static final Duration INVALIDATION_DELAY = Duration.ofMillis(50);
+
+    private final AtomicBoolean recommendationsFail = new AtomicBoolean(true);
+    private final AtomicInteger productCalls = new AtomicInteger();
+
+    private ProductAggregateCache productAggregateCache;
+    private NotFoundProductCache notFoundProductCache;
+    private ProductCompositeServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        productAggregateCache = new ProductAggregateCache(100, Duration.ofSeconds(30), INVALIDATION_DELAY, meterRegistry);
+        notFoundProductCache = new NotFoundProductCache(100, Duration.ofSeconds(5), meterRegistry);
+
+        // The recommendation service fails until recommendationsFail is cleared
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> {
+            String path = request.url().getPath();
+            if (path.startsWith("/product")) {
+                productCalls.incrementAndGet();
+                return json(path.equals("/product")
+                        ? "[{\"productId\":1,\"name\":\"name\",\"weight\":1}]"
+                        : "{\"productId\":1,\"name\":\"name\",\"weight\":1}");
+            }
+            if (path.startsWith("/recommendation")) {
+                return recommendationsFail.get()
+                        ? Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build())
+                        : json("[{\"productId\":1,\"recommendationId\":1,\"author\":\"author\",\"rating\":1,\"content\":\"content\"}]");
+            }
+            return json("[{\"productId\":1,\"reviewId\":1,\"author\":\"author\",\"subject\":\"subject\",\"content\":\"content\"}]");
+        });
+
+        ProductCompositeIntegration integration = new IntegrationBuilder(webClientBuilder)
+                .meterRegistry(meterRegistry)
+                .productAggregateCache(productAggregateCache)
+                .notFoundProductCache(notFoundProductCache)
+                .build();
+        service = new ProductCompositeServiceImpl(mock(ServiceUtil.class), integration,
+                productAggregateCache, notFoundProductCache, meterRegistry, PARALLEL, 100);
+    }
+
+    @Test
+    void partialAggregateIsNotCached() {
+        ProductAggregate partial = service.getProduct(1, null, null, null, null).block();
+        assertEquals(0, partial.getRecommendations().size());
+        assertEquals(1, partial.getReviews().size());
+        assertNull(productAggregateCache.get(1));
+
+        recommendationsFail.set(false);
+        ProductAggregate complete = service.getProduct(1, null, null, null, null).block();
+        assertEquals(1, complete.getRecommendations().size());
+        assertNotNull(productAggregateCache.get(1));
+
+        service.getProduct(1, null, null, null, null).block();
+        assertEquals(2, productCalls.get());
+    }
+
+    @Test
+    void partialBatchIsNotCached() {
+        List<ProductAggregate> partial = service.getProducts(List.of(1)).collectList().block();
+        assertEquals(0, partial.get(0).getRecommendations().size());
+        assertNull(productAggregateCache.get(1));
+
+        recommendationsFail.set(false);
+        service.getProducts(List.of(1)).collectList().block();
+        assertNotNull(productAggregateCache.get(1));
+    }
+
+    @Test
+    void changedProductIsInvalidatedAgainAfterTheDelay() throws InterruptedException {
+        recommendationsFail.set(false);
+        ProductAggregate aggregate = service.getProduct(1, null, null, null, null).block();
+
+        productAggregateCache.invalidateChanged(1);
+        assertNull(productAggregateCache.get(1));
+
+        // A read in flight during the invalidation caches the old aggregate again
+        productAggregateCache.put(aggregate);
+        Thread.sleep(INVALIDATION_DELAY.multipliedBy(4).toMillis());
+        assertNull(productAggregateCache.get(1));
+    }
+
+    @Test
+    void consumedEventInvalidatesTheProduct() {
+        recommendationsFail.set(false);
+        service.getProduct(1, null, null, null, null).block();
+        assertNotNull(productAggregateCache.get(1));
+
+        // The event was published through another instance
+        new CacheInvalidationConfig().cacheInvalidator(productAggregateCache, notFoundProductCache)
+                .accept(new Event<>(DELETE, 1, null));
+        assertNull(productAggregateCache.get(1));
+    }
+
+    private static Mono<ClientResponse> json(String body) {
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header("Content-Type", "application/json")
+                .body(body)
+                .build());
+    }
+}
@@ -1,10 +1,15 @@
 package com.akt.microservices.composite.product;
 
+import com.akt.api.composite.product.ProductAggregateItem;
 import com.akt.api.core.product.Product;
 import com.akt.api.core.recommendation.Recommendation;
 import com.akt.api.core.review.Review;
 import com.akt.api.exceptions.InvalidInputException;
 import com.akt.api.exceptions.NotFoundException;
+import com.akt.api.exceptions.ServiceUnavailableException;
+import com.akt.microservices.composite.product.services.NotFoundProductCache;
+import com.akt.microservices.composite.product.services.NotFoundProductIds;
+import com.akt.microservices.composite.product.services.ProductAggregateCache;
 import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,12 +20,25 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static java.util.Collections.singletonList;
+import static com.akt.api.composite.product.ProductAggregateItem.Type.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT,
 		classes = {SecurityConfigTests.class},
@@ -33,15 +51,26 @@ class ProductCompositeServiceApplicationTests {
 	private static final int PRODUCT_ID_OK = 1;
 	private static final int PRODUCT_ID_NOT_FOUND = 2;
 	private static final int PRODUCT_ID_INVALID_INPUT = 3;
+	private static final int PRODUCT_ID_CACHED_NOT_FOUND = 4;
+	private static final int PRODUCT_ID_TIMEOUT = 5;
+	private static final int PRODUCT_ID_UNAVAILABLE = 6;
 
 	@Autowired
 	private WebTestClient webTestClient;
 
+	@Autowired
+	private ProductAggregateCache productAggregateCache;
+
+	@Autowired
+	private NotFoundProductCache notFoundProductCache;
+
 	@MockitoBean
 	private ProductCompositeIntegration productCompositeIntegration;
 
 	@BeforeEach
 	void setUp(){
+		productAggregateCache.invalidate(PRODUCT_ID_OK);
+
 		when(productCompositeIntegration.getProduct(PRODUCT_ID_OK))
 				.thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
 		when(productCompositeIntegration.getRecommendations(PRODUCT_ID_OK))
@@ -49,11 +78,42 @@ class ProductCompositeServiceApplicationTests {
 		when(productCompositeIntegration.getReviews(PRODUCT_ID_OK))
 				.thenReturn(Flux.fromIterable(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock-address"))));
 
+		when(productCompositeIntegration.getRecommendations(PRODUCT_ID_OK, 1, 10))
+				.thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 2, "author", 1, "content", "mock-address")));
+		when(productCompositeIntegration.getReviews(PRODUCT_ID_OK, null, 10))
+				.thenReturn(Flux.empty());
+
+		when(productCompositeIntegration.streamRecommendations(PRODUCT_ID_OK))
+				.thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock-address")));
+		when(productCompositeIntegration.streamReviews(PRODUCT_ID_OK))
+				.thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock-address")));
+
+		when(productCompositeIntegration.getProducts(List.of(PRODUCT_ID_NOT_FOUND, PRODUCT_ID_OK)))
+				.thenReturn(Flux.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
+		when(productCompositeIntegration.getRecommendationsByProductIds(List.of(PRODUCT_ID_NOT_FOUND, PRODUCT_ID_OK)))
+				.thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock-address")));
+		when(productCompositeIntegration.getReviewsByProductIds(List.of(PRODUCT_ID_NOT_FOUND, PRODUCT_ID_OK)))
+				.thenReturn(Flux.empty());
+
 		when(productCompositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND))
 				.thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
 
 		when(productCompositeIntegration.getProduct(PRODUCT_ID_INVALID_INPUT))
 				.thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID_INPUT));
+
+		when(productCompositeIntegration.getProduct(PRODUCT_ID_TIMEOUT))
+				.thenReturn(Mono.error(new TimeoutException("TIMEOUT: " + PRODUCT_ID_TIMEOUT)));
+		when(productCompositeIntegration.getRecommendations(PRODUCT_ID_TIMEOUT)).thenReturn(Flux.empty());
+		when(productCompositeIntegration.getReviews(PRODUCT_ID_TIMEOUT)).thenReturn(Flux.empty());
+
+		when(productCompositeIntegration.getProduct(PRODUCT_ID_UNAVAILABLE))
+				.thenReturn(Mono.error(ServiceUnavailableException.withoutStackTrace("UNAVAILABLE: " + PRODUCT_ID_UNAVAILABLE)));
+		when(productCompositeIntegration.getRecommendations(PRODUCT_ID_UNAVAILABLE)).thenReturn(Flux.empty());
+		when(productCompositeIntegration.getReviews(PRODUCT_ID_UNAVAILABLE)).thenReturn(Flux.empty());
+
+		// No shared list request is in flight when a product call fails
+		when(productCompositeIntegration.whenRecommendationsTerminated(anyInt())).thenReturn(Mono.empty());
+		when(productCompositeIntegration.whenReviewsTerminated(anyInt())).thenReturn(Mono.empty());
 	}
 
 	@Test
@@ -68,6 +128,102 @@ class ProductCompositeServiceApplicationTests {
 					.jsonPath("$.reviews.length()").isEqualTo(1);
 	}
 
+	@Test
+	void getProductCachedAsNotFound(){
+		notFoundProductCache.put(PRODUCT_ID_CACHED_NOT_FOUND, "NOT FOUND: " + PRODUCT_ID_CACHED_NOT_FOUND);
+		try {
+			getAndVerifyProduct(PRODUCT_ID_CACHED_NOT_FOUND, NOT_FOUND)
+					.jsonPath("$.path").isEqualTo("/product-composite/" + PRODUCT_ID_CACHED_NOT_FOUND)
+					.jsonPath("$.message").isEqualTo("NOT FOUND: " + PRODUCT_ID_CACHED_NOT_FOUND);
+
+			verify(productCompositeIntegration, never()).getProduct(PRODUCT_ID_CACHED_NOT_FOUND);
+			verify(productCompositeIntegration, never()).getRecommendations(PRODUCT_ID_CACHED_NOT_FOUND);
+			verify(productCompositeIntegration, never()).getReviews(PRODUCT_ID_CACHED_NOT_FOUND);
+		} finally {
+			notFoundProductCache.invalidate(PRODUCT_ID_CACHED_NOT_FOUND);
+		}
+	}
+
+	@Test
+	void getProductServedFromCache(){
+		getAndVerifyProduct(PRODUCT_ID_OK, OK)
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+		getAndVerifyProduct(PRODUCT_ID_OK, OK)
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.reviews.length()").isEqualTo(1);
+
+		verify(productCompositeIntegration, times(1)).getProduct(PRODUCT_ID_OK);
+		verify(productCompositeIntegration, times(1)).getRecommendations(PRODUCT_ID_OK);
+		verify(productCompositeIntegration, times(1)).getReviews(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void getProductsByProductIds(){
+		webTestClient.get()
+				.uri("/product-composite?ids=" + PRODUCT_ID_NOT_FOUND + "," + PRODUCT_ID_OK + "," + PRODUCT_ID_NOT_FOUND)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectHeader().valueEquals(NotFoundProductIds.HEADER, String.valueOf(PRODUCT_ID_NOT_FOUND))
+				.expectBody()
+					.jsonPath("$.length()").isEqualTo(1)
+					.jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_OK)
+					.jsonPath("$[0].recommendations.length()").isEqualTo(1)
+					.jsonPath("$[0].reviews.length()").isEqualTo(0);
+	}
+
+	@Test
+	void getProductsTooManyProductIds(){
+		String productIds = IntStream.rangeClosed(1, 101).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+		webTestClient.get()
+				.uri("/product-composite?ids=" + productIds)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+				.expectBody()
+					.jsonPath("$.message").isEqualTo("Too many productIds: 101, at most 100 are allowed");
+
+		verify(productCompositeIntegration, never()).getProducts(anyList());
+	}
+
+	@Test
+	void getProductPage(){
+		webTestClient.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK + "?afterRecommendationId=1&recommendationLimit=10&reviewLimit=10")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectBody()
+					.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+					.jsonPath("$.recommendations.length()").isEqualTo(1)
+					.jsonPath("$.recommendations[0].recommendationId").isEqualTo(2)
+					.jsonPath("$.reviews.length()").isEqualTo(0);
+
+		verify(productCompositeIntegration, times(1)).getRecommendations(PRODUCT_ID_OK, 1, 10);
+		verify(productCompositeIntegration, times(0)).getRecommendations(PRODUCT_ID_OK);
+	}
+
+	@Test
+	void getProductStream(){
+		Flux<ProductAggregateItem> items = webTestClient.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK + "/stream")
+				.accept(APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentTypeCompatibleWith(APPLICATION_NDJSON)
+				.returnResult(ProductAggregateItem.class)
+				.getResponseBody();
+
+		StepVerifier.create(items)
+				.expectNextMatches(item -> item.getType() == PRODUCT && item.getProduct().getProductId() == PRODUCT_ID_OK)
+				.expectNextMatches(item -> item.getType() == RECOMMENDATION || item.getType() == REVIEW)
+				.expectNextMatches(item -> item.getType() == RECOMMENDATION || item.getType() == REVIEW)
+				.verifyComplete();
+	}
+
 	@Test
 	void getProductNotFound(){
 		getAndVerifyProduct(PRODUCT_ID_NOT_FOUND, NOT_FOUND)
@@ -82,6 +238,20 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.message").isEqualTo("INVALID: " + PRODUCT_ID_INVALID_INPUT);
 	}
 
+	@Test
+	void getProductTimeout(){
+		getAndVerifyProduct(PRODUCT_ID_TIMEOUT, GATEWAY_TIMEOUT)
+				.jsonPath("$.path").isEqualTo("/product-composite/" + PRODUCT_ID_TIMEOUT)
+				.jsonPath("$.message").isEqualTo("TIMEOUT: " + PRODUCT_ID_TIMEOUT);
+	}
+
+	@Test
+	void getProductServiceUnavailable(){
+		getAndVerifyProduct(PRODUCT_ID_UNAVAILABLE, SERVICE_UNAVAILABLE)
+				.jsonPath("$.path").isEqualTo("/product-composite/" + PRODUCT_ID_UNAVAILABLE)
+				.jsonPath("$.message").isEqualTo("UNAVAILABLE: " + PRODUCT_ID_UNAVAILABLE);
+	}
+
 	private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
 		return webTestClient.get()
 				.uri("/product-composite/" + productId)
@@ -0,0 +1,132 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.api.core.product.Product;
+import com.akt.api.core.recommendation.Recommendation;
+import com.akt.api.core.review.Review;
+import com.akt.api.exceptions.NotFoundException;
+import com.akt.microservices.composite.product.services.NotFoundProductCache;
+import com.akt.microservices.composite.product.services.ProductAggregateCache;
+import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
+import com.akt.microservices.composite.product.services.ProductCompositeServiceImpl;
+import com.akt.microservices.composite.product.services.ProductFetchStrategy;
+import com.akt.util.http.ServiceUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static com.akt.microservices.composite.product.services.ProductFetchStrategy.PARALLEL;
+import static com.akt.microservices.composite.product.services.ProductFetchStrategy.PARALLEL_WITH_CANCEL;
+import static com.akt.microservices.composite.product.services.ProductFetchStrategy.PRODUCT_FIRST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductFetchStrategyTests {
+
+    private static final int PRODUCT_ID_OK = 1;
+    private static final int PRODUCT_ID_NOT_FOUND = 2;
+
+    private ProductCompositeIntegration integration;
+    private MeterRegistry meterRegistry;
+    private Sinks.One<SignalType> recommendationsTerminated;
+    private Sinks.One<SignalType> reviewsTerminated;
+
+    @BeforeEach
+    void setUp() {
+        integration = mock(ProductCompositeIntegration.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        when(integration.getProduct(PRODUCT_ID_OK))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, null)));
+        when(integration.getRecommendations(PRODUCT_ID_OK))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", null)));
+        when(integration.getReviews(PRODUCT_ID_OK))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", null)));
+
+        // The product call fails after the list calls are sent, which never complete on their own
+        when(integration.getProduct(PRODUCT_ID_NOT_FOUND))
+                .thenReturn(Mono.delay(Duration.ofMillis(50)).then(Mono.error(NotFoundException.withoutStackTrace("NOT FOUND"))));
+        when(integration.getRecommendations(PRODUCT_ID_NOT_FOUND)).thenReturn(Flux.never());
+        when(integration.getReviews(PRODUCT_ID_NOT_FOUND)).thenReturn(Flux.never());
+
+        // The shared list requests terminate when the tests emit their terminal signal
+        recommendationsTerminated = Sinks.one();
+        reviewsTerminated = Sinks.one();
+        when(integration.whenRecommendationsTerminated(PRODUCT_ID_NOT_FOUND)).thenReturn(recommendationsTerminated.asMono());
+        when(integration.whenReviewsTerminated(PRODUCT_ID_NOT_FOUND)).thenReturn(reviewsTerminated.asMono());
+    }
+
+    @Test
+    void productIsFoundWithEveryStrategy() {
+        for (ProductFetchStrategy strategy : ProductFetchStrategy.values()) {
+            StepVerifier.create(createService(strategy).getProduct(PRODUCT_ID_OK, null, null, null, null))
+                    .expectNextMatches(aggregate -> aggregate.getRecommendations().size() == 1 && aggregate.getReviews().size() == 1)
+                    .verifyComplete();
+        }
+    }
+
+    @Test
+    void parallelCountsWastedCallsWhenTheyTerminate() {
+        StepVerifier.create(createService(PARALLEL).getProduct(PRODUCT_ID_NOT_FOUND, null, null, null, null))
+                .verifyError(NotFoundException.class);
+
+        // Nothing is counted while the list requests are still running
+        assertEquals(0.0, wastedCalls(PARALLEL, "recommendations", "completed"));
+        assertEquals(0.0, wastedCalls(PARALLEL, "reviews", "failed"));
+
+        recommendationsTerminated.tryEmitValue(SignalType.ON_COMPLETE);
+        reviewsTerminated.tryEmitValue(SignalType.ON_ERROR);
+
+        assertEquals(1.0, wastedCalls(PARALLEL, "recommendations", "completed"));
+        assertEquals(1.0, wastedCalls(PARALLEL, "reviews", "failed"));
+        assertEquals(0.0, wastedCalls(PARALLEL, "reviews", "completed"));
+    }
+
+    @Test
+    void parallelWithCancelCountsCancelledWastedCalls() {
+        StepVerifier.create(createService(PARALLEL_WITH_CANCEL).getProduct(PRODUCT_ID_NOT_FOUND, null, null, null, null))
+                .verifyError(NotFoundException.class);
+
+        recommendationsTerminated.tryEmitValue(SignalType.CANCEL);
+        reviewsTerminated.tryEmitValue(SignalType.CANCEL);
+
+        assertEquals(1.0, wastedCalls(PARALLEL_WITH_CANCEL, "recommendations", "cancelled"));
+        assertEquals(1.0, wastedCalls(PARALLEL_WITH_CANCEL, "reviews", "cancelled"));
+    }
+
+    @Test
+    void productFirstSendsNoListCallsForMissingProduct() {
+        StepVerifier.create(createService(PRODUCT_FIRST).getProduct(PRODUCT_ID_NOT_FOUND, null, null, null, null))
+                .verifyError(NotFoundException.class);
+
+        verify(integration, never()).getRecommendations(PRODUCT_ID_NOT_FOUND);
+        verify(integration, never()).getReviews(PRODUCT_ID_NOT_FOUND);
+        assertEquals(0.0, wastedCalls(PRODUCT_FIRST, "recommendations", "completed"));
+        assertEquals(0.0, wastedCalls(PRODUCT_FIRST, "recommendations", "cancelled"));
+    }
+
+    private ProductCompositeServiceImpl createService(ProductFetchStrategy strategy) {
+        return new ProductCompositeServiceImpl(mock(ServiceUtil.class), integration,
+                new ProductAggregateCache(100, Duration.ofSeconds(30), Duration.ofSeconds(5), meterRegistry),
+                new NotFoundProductCache(100, Duration.ofSeconds(5), meterRegistry),
+                meterRegistry, strategy, 100);
+    }
+
+    private double wastedCalls(ProductFetchStrategy strategy, String call, String outcome) {
+        return meterRegistry.get("composite.downstream.wasted")
+                .tag("strategy", strategy.name().toLowerCase())
+                .tag("call", call)
+                .tag("outcome", outcome)
+                .counter().count();
+    }
+}
@@ -0,0 +1,122 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.microservices.composite.product.services.RequestCoalescer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RequestCoalescerTests {
+
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void concurrentCallersShareOneRequest() {
+        RequestCoalescer<Integer, String> coalescer = new RequestCoalescer<>("test", meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> response = Sinks.one();
+
+        Mono<String> first = coalescer.coalesce(1, () -> {
+            calls.incrementAndGet();
+            return response.asMono();
+        });
+        Mono<String> second = coalescer.coalesce(1, () -> {
+            calls.incrementAndGet();
+            return response.asMono();
+        });
+
+        List<String> results = new CopyOnWriteArrayList<>();
+        first.subscribe(results::add);
+        second.subscribe(results::add);
+        response.tryEmitValue("result");
+
+        assertEquals(1, calls.get());
+        assertEquals(List.of("result", "result"), results);
+        assertEquals(1.0, count("originated"));
+        assertEquals(1.0, count("coalesced"));
+    }
+
+    @Test
+    void completedRequestIsNotReused() {
+        RequestCoalescer<Integer, String> coalescer = new RequestCoalescer<>("test", meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            List<String> result = coalescer.coalesceMany(1, () -> {
+                calls.incrementAndGet();
+                return Flux.just("a", "b");
+            }).collectList().block();
+
+            assertEquals(List.of("a", "b"), result);
+        }
+
+        assertEquals(2, calls.get());
+        assertEquals(2.0, count("originated"));
+        assertEquals(0.0, count("coalesced"));
+    }
+
+    @Test
+    void unusedRequestIsCancelledWhenCancelWhenUnused() {
+        for (boolean cancelWhenUnused : List.of(false, true)) {
+            RequestCoalescer<Integer, String> coalescer = new RequestCoalescer<>("test", cancelWhenUnused, meterRegistry);
+            AtomicInteger cancelled = new AtomicInteger();
+            Sinks.Many<String> response = Sinks.many().unicast().onBackpressureBuffer();
+
+            coalescer.coalesceMany(1, () -> response.asFlux().doOnCancel(cancelled::incrementAndGet))
+                    .subscribe()
+                    .dispose();
+
+            assertEquals(cancelWhenUnused ? 1 : 0, cancelled.get());
+        }
+    }
+
+    @Test
+    void sharedRequestReportsHowItTerminated() {
+        for (boolean cancelWhenUnused : List.of(false, true)) {
+            RequestCoalescer<Integer, String> coalescer = new RequestCoalescer<>("test", cancelWhenUnused, meterRegistry);
+            Sinks.Many<String> completing = Sinks.many().unicast().onBackpressureBuffer();
+            Sinks.Many<String> failing = Sinks.many().unicast().onBackpressureBuffer();
+
+            coalescer.coalesceMany(1, completing::asFlux).subscribe();
+            coalescer.coalesceMany(2, failing::asFlux).subscribe();
+            Disposable unused = coalescer.coalesceMany(3, Flux::never).subscribe();
+
+            List<SignalType> signals = new CopyOnWriteArrayList<>();
+            for (int key = 1; key <= 3; key++) {
+                coalescer.whenTerminated(key).subscribe(signals::add);
+            }
+            assertEquals(List.of(), signals);
+
+            completing.tryEmitComplete();
+            failing.tryEmitError(new RuntimeException("failed"));
+            unused.dispose();
+
+            // Without cancelWhenUnused the request nobody waits for anymore runs on
+            assertEquals(cancelWhenUnused
+                    ? List.of(SignalType.ON_COMPLETE, SignalType.ON_ERROR, SignalType.CANCEL)
+                    : List.of(SignalType.ON_COMPLETE, SignalType.ON_ERROR), signals);
+            assertNull(coalescer.whenTerminated(1).block());
+        }
+    }
+
+    private double count(String type) {
+        return meterRegistry.get("composite.downstream.calls").tag("type", type).counter().count();
+    }
+}
@@ -0,0 +1,52 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.microservices.composite.product.services.DownstreamProperties;
+import com.akt.microservices.composite.product.services.ProductCompositeIntegration;
+import com.akt.microservices.composite.product.services.RequestDeadline;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+class RequestDeadlineTests {
+
+    private static final Duration REQUEST_BUDGET = Duration.ofMillis(100);
+    private static final Duration CALL_TIMEOUT = Duration.ofSeconds(10);
+
+    private RequestDeadline requestDeadline;
+    private ProductCompositeIntegration integration;
+
+    @BeforeEach
+    void setUp() {
+        DownstreamProperties downstreamProperties = new DownstreamProperties();
+        downstreamProperties.setRequestBudget(REQUEST_BUDGET);
+        downstreamProperties.setCallTimeout(CALL_TIMEOUT);
+        requestDeadline = new RequestDeadline(downstreamProperties);
+
+        // Every core service instance hangs
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> Mono.never());
+
+        integration = new IntegrationBuilder(webClientBuilder).downstreamProperties(downstreamProperties).build();
+    }
+
+    @Test
+    void productCallFailsAtTheRequestDeadline() {
+        StepVerifier.create(integration.getProduct(1).contextWrite(requestDeadline::startRequest))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void listCallsAreEmptyAtTheRequestDeadline() {
+        StepVerifier.create(integration.getRecommendations(1).contextWrite(requestDeadline::startRequest))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        StepVerifier.create(integration.getReviews(1, 1, 10).contextWrite(requestDeadline::startRequest))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,120 @@
+package com.akt.microservices.composite.product;
+
+import com.akt.api.exceptions.NotFoundException;
+import com.akt.microservices.composite.product.services.DownstreamProperties;
+import com.akt.microservices.composite.product.services.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestHedgerTests {
+
+    private static final Duration HEDGE_DELAY = Duration.ofMillis(20);
+
+    private MeterRegistry meterRegistry;
+    private RequestHedger hedger;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        DownstreamProperties.Hedging hedging = new DownstreamProperties.Hedging();
+        hedging.setEnabled(true);
+        hedging.setMinDelay(HEDGE_DELAY);
+        hedging.setMaxDelay(HEDGE_DELAY);
+        hedger = new RequestHedger("test", hedging, meterRegistry);
+    }
+
+    @Test
+    void slowCallIsHedgedAndFirstAnswerIsUsed() {
+        AtomicInteger calls = new AtomicInteger();
+
+        // The first call hangs, the hedged call answers right away
+        StepVerifier.create(hedger.hedge(() -> calls.incrementAndGet() == 1 ? Mono.never() : Mono.just("hedged")))
+                .expectNext("hedged")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertEquals(1.0, count("composite.downstream.hedge.fired"));
+        assertEquals(1.0, count("composite.downstream.hedge.won"));
+    }
+
+    @Test
+    void fastCallIsNotHedged() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge(() -> {
+                    calls.incrementAndGet();
+                    return Mono.just("first");
+                }))
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, count("composite.downstream.hedge.fired"));
+    }
+
+    @Test
+    void notFoundIsNotHedged() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge(() -> {
+                    calls.incrementAndGet();
+                    return Mono.error(new NotFoundException("not found"));
+                }))
+                .verifyError(NotFoundException.class);
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, count("composite.downstream.hedge.fired"));
+    }
+
+    @Test
+    void failedCallLeavesTheAnswerToTheHedgedCall() {
+        AtomicInteger calls = new AtomicInteger();
+
+        // The first call fails, e.g. with a 5xx from a slow instance, the hedged call answers
+        StepVerifier.create(hedger.hedge(() -> calls.incrementAndGet() == 1
+                        ? Mono.delay(HEDGE_DELAY.dividedBy(2)).then(Mono.error(new IllegalStateException("failed")))
+                        : Mono.just("hedged")))
+                .expectNext("hedged")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertEquals(1.0, count("composite.downstream.hedge.won"));
+    }
+
+    @Test
+    void hedgedCallFailsWhenBothCallsFail() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge(() -> Mono.error(new IllegalStateException("failed " + calls.incrementAndGet()))))
+                .verifyErrorMatches(error -> error instanceof IllegalStateException && error.getMessage().equals("failed 1"));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void slowHedgedCallLosesToFirstCall() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.hedge(() -> calls.incrementAndGet() == 1
+                        ? Mono.delay(HEDGE_DELAY.multipliedBy(2)).thenReturn("first")
+                        : Mono.never()))
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(1.0, count("composite.downstream.hedge.fired"));
+        assertEquals(0.0, count("composite.downstream.hedge.won"));
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("call", "test").counter().count();
+    }
+}
@@ -1,5 +1,6 @@
 package com.akt.microservices.core.product;
 
+import com.akt.microservices.core.product.persistence.ProcessedEventEntity;
 import com.akt.microservices.core.product.persistence.ProductEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,5 +43,8 @@ public class ProductServiceApplication {
 
 		ReactiveIndexOperations indexOperations = mongoTemplate.indexOps(ProductEntity.class);
 		resolver.resolveIndexFor(ProductEntity.class).forEach(e -> indexOperations.ensureIndex(e).block());
+
+		ReactiveIndexOperations processedEventIndexOperations = mongoTemplate.indexOps(ProcessedEventEntity.class);
+		resolver.resolveIndexFor(ProcessedEventEntity.class).forEach(e -> processedEventIndexOperations.ensureIndex(e).block());
 	}
 }
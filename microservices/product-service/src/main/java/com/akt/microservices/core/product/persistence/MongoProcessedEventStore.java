@@ -0,0 +1,36 @@
+package com.akt.microservices.core.product.persistence;
+
+import com.akt.util.messaging.ProcessedEventStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * Keeps the ids of processed events in the processedEvents collection, a TTL index on
+ * processedAt removes them after ProcessedEventStore.RETENTION.
+ */
+@Component
+@ConditionalOnProperty(name = "app.eventDedup.store", havingValue = "true")
+public class MongoProcessedEventStore implements ProcessedEventStore {
+
+    private final ProcessedEventRepository repository;
+
+    @Autowired
+    public MongoProcessedEventStore(ProcessedEventRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public Mono<Boolean> contains(String eventId) {
+        return repository.existsById(eventId);
+    }
+
+    @Override
+    public Mono<Void> add(String eventId) {
+        // save() upserts by id, so a concurrent add of the same id is harmless
+        return repository.save(new ProcessedEventEntity(eventId, Instant.now())).then();
+    }
+}
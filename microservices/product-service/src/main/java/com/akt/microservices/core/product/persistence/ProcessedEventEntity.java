@@ -0,0 +1,42 @@
+package com.akt.microservices.core.product.persistence;
+
+import com.akt.util.messaging.ProcessedEventStore;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "processedEvents")
+public class ProcessedEventEntity {
+
+    @Id
+    private String eventId;
+
+    @Indexed(expireAfter = ProcessedEventStore.RETENTION)
+    private Instant processedAt;
+
+    public ProcessedEventEntity() {
+    }
+
+    public ProcessedEventEntity(String eventId, Instant processedAt) {
+        this.eventId = eventId;
+        this.processedAt = processedAt;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(Instant processedAt) {
+        this.processedAt = processedAt;
+    }
+}
@@ -1,8 +1,22 @@
 package com.akt.microservices.core.product.persistence;
 
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface ProductRepository extends ReactiveCrudRepository<ProductEntity, String> {
+import java.util.Collection;
+
+public interface ProductRepository extends ReactiveCrudRepository<ProductEntity, String>, ProductUpsertRepository {
     Mono<ProductEntity> findByProductId(int productId);
+
+    Flux<ProductEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Deletes the product with a single server-side delete by productId, without reading it first.
+     *
+     * @return the number of deleted products
+     */
+    Mono<Long> deleteByProductId(int productId);
+
+    Mono<Long> deleteByProductIdIn(Collection<Integer> productIds);
 }
@@ -0,0 +1,16 @@
+package com.akt.microservices.core.product.persistence;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Upserts products by productId, used for CREATE events when app.messageProcessor.createMode is "upsert".
+ * An existing product is overwritten and its version incremented instead of failing on the unique index.
+ */
+public interface ProductUpsertRepository {
+
+    Mono<ProductEntity> upsert(ProductEntity entity);
+
+    Mono<Void> upsertAll(List<ProductEntity> entities);
+}
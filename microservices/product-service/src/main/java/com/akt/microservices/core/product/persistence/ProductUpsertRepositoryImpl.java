@@ -0,0 +1,53 @@
+package com.akt.microservices.core.product.persistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class ProductUpsertRepositoryImpl implements ProductUpsertRepository {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    @Autowired
+    ProductUpsertRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Mono<ProductEntity> upsert(ProductEntity entity) {
+        return mongoOperations.findAndModify(byProductId(entity), update(entity),
+                FindAndModifyOptions.options().upsert(true).returnNew(true), ProductEntity.class);
+    }
+
+    @Override
+    public Mono<Void> upsertAll(List<ProductEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.empty();
+        }
+
+        // One ordered bulk write, so a product that occurs twice is inserted first and then updated
+        ReactiveBulkOperations bulkOperations = mongoOperations.bulkOps(BulkMode.ORDERED, ProductEntity.class);
+        entities.forEach(entity -> bulkOperations.upsert(byProductId(entity), update(entity)));
+        return bulkOperations.execute().then();
+    }
+
+    private Query byProductId(ProductEntity entity) {
+        return Query.query(where("productId").is(entity.getProductId()));
+    }
+
+    private Update update(ProductEntity entity) {
+        return new Update()
+                .set("name", entity.getName())
+                .set("weight", entity.getWeight())
+                .inc("version", 1);
+    }
+}
@@ -1,55 +1,109 @@
 package com.akt.microservices.core.product.services;
 
 import com.akt.api.core.product.Product;
-import com.akt.api.core.product.ProductService;
 import com.akt.api.event.Event;
-import com.akt.api.exceptions.EventProcessingException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.akt.util.messaging.KeyOrderedLanes;
+import com.akt.util.messaging.MessageProcessorSupport;
+import com.akt.util.messaging.ProcessedEventStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Stores the product events, see MessageProcessorSupport for the processing modes.
+ */
 @Configuration
-public class MessageProcessorConfig {
+public class MessageProcessorConfig extends MessageProcessorSupport<Product> {
 
-    private static final Logger logger = LoggerFactory.getLogger(MessageProcessorConfig.class);
-
-    private final ProductService productService;
+    private final ProductServiceImpl productService;
 
     @Autowired
-    public MessageProcessorConfig(ProductService productService) {
+    public MessageProcessorConfig(
+            ProductServiceImpl productService,
+            StreamBridge streamBridge,
+            MeterRegistry meterRegistry,
+            @Value("${app.messageProcessor.concurrency:16}") int concurrency,
+            @Value("${app.messageProcessor.maxInFlight:256}") int maxInFlight,
+            @Value("${app.messageProcessor.createMode:insert}") String createMode,
+            @Value("${app.eventDedup.cacheSize:100000}") int dedupCacheSize,
+            ObjectProvider<ProcessedEventStore> processedEventStore) {
+        super("products", streamBridge, meterRegistry, concurrency, maxInFlight, createMode, dedupCacheSize,
+                processedEventStore.getIfAvailable());
         this.productService = productService;
     }
 
     @Bean
+    @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "single", matchIfMissing = true)
     public Consumer<Event<Integer, Product>> messageProcessor(){
-        return event -> {
-            logger.info("Processing the {} message created at {}", event.getEventType(), event.getEventCreatedAt());
-
-            switch (event.getEventType()){
-                case CREATE -> {
-                    Product product = event.getData();
-                    logger.info("Creating product with productId: {}", product.getProductId());
-                    productService.createProduct(product).block();
-                }
-
-                case DELETE -> {
-                    int productId = event.getKey();
-                    logger.info("Creating product with productId: {}", productId);
-                    productService.deleteProduct(productId).block();
-                }
-
-                default -> {
-                    String errorMessage = "Incorrect event type: " + event.getEventType() + ". Expected a CREATE or DELETE event";
-                    logger.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-                }
-            }
-
-            logger.info("Processing Done - {} message created at {}", event.getEventType(), event.getEventCreatedAt());
-        };
+        return singleProcessor();
+    }
+
+    @Bean(name = "messageProcessor")
+    @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "batch")
+    public Consumer<List<Event<Integer, Product>>> messageBatchProcessor(){
+        return batchProcessor();
+    }
+
+    @Bean(name = "messageProcessor")
+    @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "reactive")
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> messageReactiveProcessor(){
+        return reactiveProcessor();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "reactive")
+    public ListenerContainerCustomizer<AbstractMessageListenerContainer<?, ?>> asyncAcksCustomizer(){
+        return asyncAcks();
+    }
+
+    @Bean(name = "messageProcessor")
+    @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "lanes")
+    public Consumer<Message<Event<Integer, Product>>> messageLanesProcessor(KeyOrderedLanes messageProcessorLanes){
+        return lanesProcessor(messageProcessorLanes);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "lanes")
+    public KeyOrderedLanes messageProcessorLanes(){
+        return createLanes();
+    }
+
+    @Override
+    protected Mono<Product> create(Product product, boolean upsert) {
+        return upsert ? productService.upsertProduct(product) : productService.createProduct(product);
+    }
+
+    @Override
+    protected Mono<Void> delete(int productId) {
+        return productService.deleteProduct(productId);
+    }
+
+    @Override
+    protected Flux<Integer> createAll(List<Product> products, boolean upsert) {
+        return upsert ? productService.upsertProducts(products) : productService.createProducts(products);
+    }
+
+    @Override
+    protected Mono<Long> deleteAll(List<Integer> productIds) {
+        return productService.deleteProducts(productIds);
+    }
+
+    @Override
+    protected String describe(Product product) {
+        return "product with productId: " + product.getProductId();
     }
 }
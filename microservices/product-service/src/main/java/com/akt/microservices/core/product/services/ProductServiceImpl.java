@@ -7,13 +7,23 @@ import com.akt.api.exceptions.NotFoundException;
 import com.akt.microservices.core.product.persistence.ProductEntity;
 import com.akt.microservices.core.product.persistence.ProductRepository;
 import com.akt.util.http.ServiceUtil;
+import com.mongodb.MongoBulkWriteException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.akt.util.http.ConditionalGetFilter.checkNotModified;
+import static com.akt.util.http.ConditionalGetFilter.entityTag;
 import static java.util.logging.Level.FINE;
 
 @RestController
@@ -24,12 +34,15 @@ public class ProductServiceImpl implements ProductService {
     private final ProductRepository repository;
     private final ProductMapper mapper;
     private final ServiceUtil serviceUtil;
+    private final int maxProductIds;
 
     @Autowired
-    public ProductServiceImpl(ProductRepository repository, ProductMapper mapper, ServiceUtil serviceUtil) {
+    public ProductServiceImpl(ProductRepository repository, ProductMapper mapper, ServiceUtil serviceUtil,
+                              @Value("${app.maxProductIds:100}") int maxProductIds) {
         this.repository = repository;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
+        this.maxProductIds = maxProductIds;
     }
 
     @Override
@@ -41,7 +54,7 @@ public class ProductServiceImpl implements ProductService {
                 .log(logger.getName(), FINE)
                 .onErrorMap(
                         DuplicateKeyException.class,
-                        ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId()))
+                        ex -> InvalidInputException.withoutStackTrace("Duplicate key, Product Id: " + body.getProductId()))
                 .map(e -> mapper.entityToDto(e));
 
         logger.info("createProduct: created product with productId: {}", body.getProductId());
@@ -54,12 +67,15 @@ public class ProductServiceImpl implements ProductService {
         logger.info("getProduct call for productId={}", productId);
 
         if (productId < 1) {
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
         }
 
         Mono<Product> entity = repository.findByProductId(productId)
-                .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: " + productId)))
+                .switchIfEmpty(Mono.error(() -> NotFoundException.withoutStackTrace("No product found for productId: " + productId)))
                 .log(logger.getName(), FINE)
+                // An unchanged product is answered with a 304 before it is mapped
+                .filterWhen(e -> checkNotModified(entityTag(List.of(e), ProductEntity::getId, ProductEntity::getVersion))
+                        .map(notModified -> !notModified))
                 .map(e -> mapper.entityToDto(e))
                 .map(e -> setServiceAddress(e));
 
@@ -68,14 +84,145 @@ public class ProductServiceImpl implements ProductService {
         return entity;
     }
 
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        logger.info("getProducts call for {} productIds", productIds.size());
+
+        if (productIds.size() > maxProductIds) {
+            throw InvalidInputException.withoutStackTrace(
+                    "Too many productIds: " + productIds.size() + ", at most " + maxProductIds + " are allowed");
+        }
+
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+            }
+        });
+
+        return repository.findByProductIdIn(productIds)
+                .log(logger.getName(), FINE)
+                .map(e -> mapper.entityToDto(e))
+                .map(e -> setServiceAddress(e));
+    }
+
     @Override
     public Mono<Void> deleteProduct(int productId) {
         if (productId < 1) {
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
         }
 
         logger.debug("deleteProduct: attempt to delete an entity with productId: {}", productId);
-        return repository.findByProductId(productId).log(logger.getName(), FINE).map(e -> repository.delete(e)).flatMap(e -> e);
+        return repository.deleteByProductId(productId)
+                .log(logger.getName(), FINE)
+                .doOnNext(count -> logger.debug("deleteProduct: deleted {} entities with productId: {}", count, productId))
+                .then();
+    }
+
+    /**
+     * Creates the products with bulk inserts, used when CREATE events are consumed in batches.
+     *
+     * @param products the products to create
+     * @return the positions in products of the products that could not be created,
+     * i.e. products with an invalid productId or a productId that already exists
+     */
+    public Flux<Integer> createProducts(List<Product> products) {
+        logger.info("createProducts call for {} products", products.size());
+
+        List<Integer> invalidPositions = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<ProductEntity> entities = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            if (products.get(i).getProductId() < 1) {
+                invalidPositions.add(i);
+            } else {
+                positions.add(i);
+                entities.add(mapper.dtoToEntity(products.get(i)));
+            }
+        }
+
+        return Flux.concat(Flux.fromIterable(invalidPositions), insertAll(entities, 0).map(positions::get));
+    }
+
+    /**
+     * Creates the product or overwrites an existing product with the same productId, used for
+     * CREATE events when app.messageProcessor.createMode is "upsert".
+     */
+    public Mono<Product> upsertProduct(Product body) {
+        logger.debug("upsertProduct call for productId={}", body.getProductId());
+
+        if (body.getProductId() < 1) {
+            return Mono.error(InvalidInputException.withoutStackTrace("Invalid productId: " + body.getProductId()));
+        }
+
+        return repository.upsert(mapper.dtoToEntity(body))
+                .log(logger.getName(), FINE)
+                .map(e -> mapper.entityToDto(e));
+    }
+
+    /**
+     * Creates or overwrites the products with one bulk write, used when CREATE events are consumed
+     * in batches and app.messageProcessor.createMode is "upsert".
+     *
+     * @return the positions in products of the products with an invalid productId
+     */
+    public Flux<Integer> upsertProducts(List<Product> products) {
+        logger.info("upsertProducts call for {} products", products.size());
+
+        List<Integer> invalidPositions = new ArrayList<>();
+        List<ProductEntity> entities = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            if (products.get(i).getProductId() < 1) {
+                invalidPositions.add(i);
+            } else {
+                entities.add(mapper.dtoToEntity(products.get(i)));
+            }
+        }
+
+        return repository.upsertAll(entities)
+                .log(logger.getName(), FINE)
+                .thenMany(Flux.fromIterable(invalidPositions));
+    }
+
+    /**
+     * Deletes the products with a single server-side delete, used when DELETE events are consumed in batches.
+     *
+     * @return the number of deleted products
+     */
+    public Mono<Long> deleteProducts(Collection<Integer> productIds) {
+        logger.debug("deleteProducts: deleting entities for {} productIds", productIds.size());
+        return repository.deleteByProductIdIn(productIds)
+                .log(logger.getName(), FINE);
+    }
+
+    private Flux<Integer> insertAll(List<ProductEntity> entities, int offset) {
+        if (entities.isEmpty()) {
+            return Flux.empty();
+        }
+
+        // New entities are saved with one ordered insertMany, which stops at the first duplicate.
+        // Everything before it is stored, so the insert continues with the entities after it.
+        return repository.saveAll(entities)
+                .log(logger.getName(), FINE)
+                .thenMany(Flux.<Integer>empty())
+                .onErrorResume(DataIntegrityViolationException.class, ex -> {
+                    Integer failedIndex = firstFailedIndex(ex);
+                    if (failedIndex == null) {
+                        return Flux.error(ex);
+                    }
+
+                    return Flux.concat(
+                            Flux.just(offset + failedIndex),
+                            insertAll(entities.subList(failedIndex + 1, entities.size()), offset + failedIndex + 1));
+                });
+    }
+
+    private Integer firstFailedIndex(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoBulkWriteException bulkWriteException && !bulkWriteException.getWriteErrors().isEmpty()) {
+                return bulkWriteException.getWriteErrors().get(0).getIndex();
+            }
+        }
+        return null;
     }
 
     private Product setServiceAddress(Product product) {
@@ -86,12 +86,37 @@ class PersistenceTests extends MongoDbTestBase{
         StepVerifier.create(repository.existsById(savedEntity.getId())).expectNext(false).verifyComplete();
     }
 
+    @Test
+    void deleteByProductId() {
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId())).expectNext(1L).verifyComplete();
+        StepVerifier.create(repository.existsById(savedEntity.getId())).expectNext(false).verifyComplete();
+
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId())).expectNext(0L).verifyComplete();
+    }
+
     @Test
     void duplicateError() {
         ProductEntity entity = new ProductEntity(savedEntity.getProductId(), "p1", 2);
         StepVerifier.create(repository.save(entity)).expectError(DuplicateKeyException.class).verify();
     }
 
+    @Test
+    void upsert() {
+        StepVerifier.create(repository.upsert(new ProductEntity(savedEntity.getProductId(), "p100", 3)))
+                .expectNextMatches(upsertedEntity -> upsertedEntity.getId().equals(savedEntity.getId())
+                        && upsertedEntity.getVersion() == 1
+                        && upsertedEntity.getName().equals("p100"))
+                .verifyComplete();
+
+        StepVerifier.create(repository.upsertAll(List.of(new ProductEntity(2, "p2", 3), new ProductEntity(2, "p200", 4))))
+                .verifyComplete();
+
+        StepVerifier.create(repository.findByProductId(2))
+                .expectNextMatches(foundEntity -> foundEntity.getName().equals("p200") && foundEntity.getWeight() == 4)
+                .verifyComplete();
+        StepVerifier.create(repository.count()).expectNext(2L).verifyComplete();
+    }
+
     @Test
     void optimisticLockError() {
         String newName = "p101";
@@ -13,6 +13,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.akt.api.event.Event.Type.CREATE;
 import static com.akt.api.event.Event.Type.DELETE;
@@ -63,6 +65,34 @@ class ProductServiceApplicationTests extends MongoDbTestBase{
 				.jsonPath("$.productId").isEqualTo(productId);
 	}
 
+	@Test
+	void getProductsByProductIds(){
+		sendCreateProductEvent(1);
+		sendCreateProductEvent(2);
+
+		webTestClient.get()
+				.uri("/product?productIds=1,2,3")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+					.jsonPath("$.length()").isEqualTo(2);
+	}
+
+	@Test
+	void getProductsTooManyProductIds(){
+		String productIds = IntStream.rangeClosed(1, 101).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+		webTestClient.get()
+				.uri("/product?productIds=" + productIds)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+				.expectBody()
+					.jsonPath("$.message").isEqualTo("Too many productIds: 101, at most 100 are allowed");
+	}
+
 	@Test
 	void getProductNotFound() {
 		int productId = 123;
@@ -1,5 +1,6 @@
 package com.akt.microservices.core.recommendation;
 
+import com.akt.microservices.core.recommendation.persistence.ProcessedEventEntity;
 import com.akt.microservices.core.recommendation.persistence.RecommendationEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,5 +44,8 @@ public class RecommendationServiceApplication {
 
 		ReactiveIndexOperations indexOps = mongoTemplate.indexOps(RecommendationEntity.class);
 		resolver.resolveIndexFor(RecommendationEntity.class).forEach(e -> indexOps.ensureIndex(e).block());
+
+		ReactiveIndexOperations processedEventIndexOps = mongoTemplate.indexOps(ProcessedEventEntity.class);
+		resolver.resolveIndexFor(ProcessedEventEntity.class).forEach(e -> processedEventIndexOps.ensureIndex(e).block());
 	}
 }
@@ -1,8 +1,27 @@
 package com.akt.microservices.core.recommendation.persistence;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
+import java.util.Collection;
+
+public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String>, RecommendationUpsertRepository {
     Flux<RecommendationEntity> findByProductId(int productId);
+
+    Flux<RecommendationEntity> findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(
+            int productId, int afterRecommendationId, Pageable pageable);
+
+    Flux<RecommendationEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Deletes all recommendations of a product with a single server-side delete by productId,
+     * without reading them first.
+     *
+     * @return the number of deleted recommendations
+     */
+    Mono<Long> deleteByProductId(int productId);
+
+    Mono<Long> deleteByProductIdIn(Collection<Integer> productIds);
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.akt.microservices.core.recommendation.persistence;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Upserts recommendations by productId and recommendationId, used for CREATE events when
+ * app.messageProcessor.createMode is "upsert". An existing recommendation is overwritten and its
+ * version incremented instead of failing on the unique index.
+ */
+public interface RecommendationUpsertRepository {
+
+    Mono<RecommendationEntity> upsert(RecommendationEntity entity);
+
+    Mono<Void> upsertAll(List<RecommendationEntity> entities);
+}
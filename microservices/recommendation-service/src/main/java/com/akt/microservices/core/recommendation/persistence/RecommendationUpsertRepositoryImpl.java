@@ -0,0 +1,55 @@
+package com.akt.microservices.core.recommendation.persistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+class RecommendationUpsertRepositoryImpl implements RecommendationUpsertRepository {
+
+    private final ReactiveMongoOperations mongoOperations;
+
+    @Autowired
+    RecommendationUpsertRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Mono<RecommendationEntity> upsert(RecommendationEntity entity) {
+        return mongoOperations.findAndModify(byKey(entity), update(entity),
+                FindAndModifyOptions.options().upsert(true).returnNew(true), RecommendationEntity.class);
+    }
+
+    @Override
+    public Mono<Void> upsertAll(List<RecommendationEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.empty();
+        }
+
+        // One ordered bulk write, so a recommendation that occurs twice is inserted first and then updated
+        ReactiveBulkOperations bulkOperations = mongoOperations.bulkOps(BulkMode.ORDERED, RecommendationEntity.class);
+        entities.forEach(entity -> bulkOperations.upsert(byKey(entity), update(entity)));
+        return bulkOperations.execute().then();
+    }
+
+    private Query byKey(RecommendationEntity entity) {
+        return Query.query(where("productId").is(entity.getProductId())
+                .and("recommendationId").is(entity.getRecommendationId()));
+    }
+
+    private Update update(RecommendationEntity entity) {
+        return new Update()
+                .set("author", entity.getAuthor())
+                .set("rating", entity.getRating())
+                .set("content", entity.getContent())
+                .inc("version", 1);
+    }
+}
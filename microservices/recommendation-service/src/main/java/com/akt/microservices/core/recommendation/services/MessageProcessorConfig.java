@@ -1,56 +1,114 @@
 package com.akt.microservices.core.recommendation.services;
 
-import java.util.function.Consumer;
-
 import com.akt.api.core.recommendation.Recommendation;
-import com.akt.api.core.recommendation.RecommendationService;
 import com.akt.api.event.Event;
-import com.akt.api.exceptions.EventProcessingException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.akt.util.messaging.KeyOrderedLanes;
+import com.akt.util.messaging.MessageProcessorSupport;
+import com.akt.util.messaging.ProcessedEventStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-@Configuration
-public class MessageProcessorConfig {
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
-  private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
+/**
+ * Stores the recommendation events, see MessageProcessorSupport for the processing modes.
+ */
+@Configuration
+public class MessageProcessorConfig extends MessageProcessorSupport<Recommendation> {
 
-  private final RecommendationService recommendationService;
+  private final RecommendationServiceImpl recommendationService;
 
   @Autowired
-  public MessageProcessorConfig(RecommendationService recommendationService) {
+  public MessageProcessorConfig(
+    RecommendationServiceImpl recommendationService,
+    StreamBridge streamBridge,
+    MeterRegistry meterRegistry,
+    @Value("${app.messageProcessor.concurrency:16}") int concurrency,
+    @Value("${app.messageProcessor.maxInFlight:256}") int maxInFlight,
+    @Value("${app.messageProcessor.createMode:insert}") String createMode,
+    @Value("${app.eventDedup.cacheSize:100000}") int dedupCacheSize,
+    ObjectProvider<ProcessedEventStore> processedEventStore) {
+
+    super("recommendations", streamBridge, meterRegistry, concurrency, maxInFlight, createMode, dedupCacheSize,
+      processedEventStore.getIfAvailable());
     this.recommendationService = recommendationService;
   }
 
   @Bean
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "single", matchIfMissing = true)
   public Consumer<Event<Integer, Recommendation>> messageProcessor() {
-    return event -> {
+    return singleProcessor();
+  }
 
-      LOG.info("Process message created at {}...", event.getEventCreatedAt());
+  @Bean(name = "messageProcessor")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "batch")
+  public Consumer<List<Event<Integer, Recommendation>>> messageBatchProcessor() {
+    return batchProcessor();
+  }
 
-      switch (event.getEventType()) {
+  @Bean(name = "messageProcessor")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "reactive")
+  public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> messageReactiveProcessor() {
+    return reactiveProcessor();
+  }
 
-        case CREATE:
-          Recommendation recommendation = event.getData();
-          LOG.info("Create recommendation with ID: {}/{}", recommendation.getProductId(), recommendation.getRecommendationId());
-          recommendationService.createRecommendation(recommendation).block();
-          break;
+  @Bean
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "reactive")
+  public ListenerContainerCustomizer<AbstractMessageListenerContainer<?, ?>> asyncAcksCustomizer() {
+    return asyncAcks();
+  }
 
-        case DELETE:
-          int productId = event.getKey();
-          LOG.info("Delete recommendations with ProductID: {}", productId);
-          recommendationService.deleteRecommendations(productId).block();
-          break;
+  @Bean(name = "messageProcessor")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "lanes")
+  public Consumer<Message<Event<Integer, Recommendation>>> messageLanesProcessor(KeyOrderedLanes messageProcessorLanes) {
+    return lanesProcessor(messageProcessorLanes);
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "lanes")
+  public KeyOrderedLanes messageProcessorLanes() {
+    return createLanes();
+  }
+
+  @Override
+  protected Mono<Recommendation> create(Recommendation recommendation, boolean upsert) {
+    return upsert
+      ? recommendationService.upsertRecommendation(recommendation)
+      : recommendationService.createRecommendation(recommendation);
+  }
 
-        default:
-          String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-          LOG.warn(errorMessage);
-          throw new EventProcessingException(errorMessage);
-      }
+  @Override
+  protected Mono<Void> delete(int productId) {
+    return recommendationService.deleteRecommendations(productId);
+  }
+
+  @Override
+  protected Flux<Integer> createAll(List<Recommendation> recommendations, boolean upsert) {
+    return upsert
+      ? recommendationService.upsertRecommendations(recommendations)
+      : recommendationService.createRecommendations(recommendations);
+  }
+
+  @Override
+  protected Mono<Long> deleteAll(List<Integer> productIds) {
+    return recommendationService.deleteRecommendations(productIds);
+  }
 
-      LOG.info("Message processing done!");
-    };
+  @Override
+  protected String describe(Recommendation recommendation) {
+    return "recommendation with ID: " + recommendation.getProductId() + "/" + recommendation.getRecommendationId();
   }
 }
@@ -6,15 +6,24 @@ import com.akt.api.exceptions.InvalidInputException;
 import com.akt.microservices.core.recommendation.persistence.RecommendationEntity;
 import com.akt.microservices.core.recommendation.persistence.RecommendationRepository;
 import com.akt.util.http.ServiceUtil;
+import com.mongodb.MongoBulkWriteException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.akt.util.http.ConditionalGetFilter.unlessNotModified;
 import static java.util.logging.Level.FINE;
 
 @RestController
@@ -25,24 +34,40 @@ public class RecommendationServiceImpl implements RecommendationService {
     private final RecommendationRepository repository;
     private final RecommendationMapper mapper;
     private final ServiceUtil serviceUtil;
+    private final int maxProductIds;
 
     @Autowired
     public RecommendationServiceImpl(RecommendationRepository repository,
                                      RecommendationMapper mapper,
-                                     ServiceUtil serviceUtil) {
+                                     ServiceUtil serviceUtil,
+                                     @Value("${app.maxProductIds:100}") int maxProductIds) {
         this.repository = repository;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
+        this.maxProductIds = maxProductIds;
     }
 
     @Override
-    public Flux<Recommendation> getRecommendations(int productId) {
+    public Flux<Recommendation> getRecommendations(int productId, Integer afterRecommendationId, Integer limit) {
 
         if(productId < 1){
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+        }
+
+        if(limit != null && limit < 1){
+            throw InvalidInputException.withoutStackTrace("Invalid limit: " + limit);
         }
 
-        Flux<Recommendation> entities = repository.findByProductId(productId)
+        // Pages are read with a keyset query on the (productId, recommendationId) index
+        Flux<RecommendationEntity> entityFlux = (afterRecommendationId == null && limit == null)
+                ? repository.findByProductId(productId)
+                : repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(
+                        productId,
+                        afterRecommendationId == null ? Integer.MIN_VALUE : afterRecommendationId,
+                        limit == null ? Pageable.unpaged() : PageRequest.of(0, limit));
+
+        // Unchanged recommendations are answered with a 304 before they are mapped
+        Flux<Recommendation> entities = unlessNotModified(entityFlux, RecommendationEntity::getId, RecommendationEntity::getVersion)
                 .log(logger.getName(), FINE)
                 .map(e -> mapper.entityToDto(e))
                 .map(e -> setServiceAddress(e));
@@ -52,10 +77,34 @@ public class RecommendationServiceImpl implements RecommendationService {
         return entities;
     }
 
+    @Override
+    public Flux<Recommendation> getRecommendationsByProductIds(List<Integer> productIds) {
+
+        if (productIds.size() > maxProductIds) {
+            throw InvalidInputException.withoutStackTrace(
+                    "Too many productIds: " + productIds.size() + ", at most " + maxProductIds + " are allowed");
+        }
+
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+            }
+        });
+
+        Flux<Recommendation> entities = repository.findByProductIdIn(productIds)
+                .log(logger.getName(), FINE)
+                .map(e -> mapper.entityToDto(e))
+                .map(e -> setServiceAddress(e));
+
+        logger.debug("getRecommendationsByProductIds: returned recommendations for {} productIds", productIds.size());
+
+        return entities;
+    }
+
     @Override
     public Mono<Recommendation> createRecommendation(Recommendation body) {
         if (body.getProductId() < 1) {
-            throw new InvalidInputException("Invalid productId: " + body.getProductId());
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + body.getProductId());
         }
 
         RecommendationEntity entity = mapper.dtoToEntity(body);
@@ -64,7 +113,7 @@ public class RecommendationServiceImpl implements RecommendationService {
                 .log(logger.getName(), FINE)
                 .onErrorMap(
                         DuplicateKeyException.class,
-                        ex -> new InvalidInputException("Duplicate key, Product Id:" + body.getProductId() + ", Recommendation Id:" + body.getRecommendationId()))
+                        ex -> InvalidInputException.withoutStackTrace("Duplicate key, Product Id:" + body.getProductId() + ", Recommendation Id:" + body.getRecommendationId()))
                 .map(e -> mapper.entityToDto(e));
 
         return newEntity;
@@ -73,12 +122,121 @@ public class RecommendationServiceImpl implements RecommendationService {
     @Override
     public Mono<Void> deleteRecommendations(int productId) {
         if (productId < 1) {
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
         }
 
         logger.debug("deleteRecommendations: deleting recommendations for product with productId: {}", productId);
 
-        return repository.deleteAll(repository.findByProductId(productId));
+        return repository.deleteByProductId(productId)
+                .log(logger.getName(), FINE)
+                .doOnNext(count -> logger.debug("deleteRecommendations: deleted {} recommendations for product with productId: {}", count, productId))
+                .then();
+    }
+
+    /**
+     * Creates the recommendations with bulk inserts, used when CREATE events are consumed in batches.
+     *
+     * @param recommendations the recommendations to create
+     * @return the positions in recommendations of the recommendations that could not be created,
+     * i.e. recommendations with an invalid productId or a key that already exists
+     */
+    public Flux<Integer> createRecommendations(List<Recommendation> recommendations) {
+        logger.debug("createRecommendations: creating {} recommendations", recommendations.size());
+
+        List<Integer> invalidPositions = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<RecommendationEntity> entities = new ArrayList<>();
+        for (int i = 0; i < recommendations.size(); i++) {
+            if (recommendations.get(i).getProductId() < 1) {
+                invalidPositions.add(i);
+            } else {
+                positions.add(i);
+                entities.add(mapper.dtoToEntity(recommendations.get(i)));
+            }
+        }
+
+        return Flux.concat(Flux.fromIterable(invalidPositions), insertAll(entities, 0).map(positions::get));
+    }
+
+    /**
+     * Creates the recommendation or overwrites an existing recommendation with the same key, used for
+     * CREATE events when app.messageProcessor.createMode is "upsert".
+     */
+    public Mono<Recommendation> upsertRecommendation(Recommendation body) {
+        if (body.getProductId() < 1) {
+            return Mono.error(InvalidInputException.withoutStackTrace("Invalid productId: " + body.getProductId()));
+        }
+
+        return repository.upsert(mapper.dtoToEntity(body))
+                .log(logger.getName(), FINE)
+                .map(e -> mapper.entityToDto(e));
+    }
+
+    /**
+     * Creates or overwrites the recommendations with one bulk write, used when CREATE events are
+     * consumed in batches and app.messageProcessor.createMode is "upsert".
+     *
+     * @return the positions in recommendations of the recommendations with an invalid productId
+     */
+    public Flux<Integer> upsertRecommendations(List<Recommendation> recommendations) {
+        logger.debug("upsertRecommendations: upserting {} recommendations", recommendations.size());
+
+        List<Integer> invalidPositions = new ArrayList<>();
+        List<RecommendationEntity> entities = new ArrayList<>();
+        for (int i = 0; i < recommendations.size(); i++) {
+            if (recommendations.get(i).getProductId() < 1) {
+                invalidPositions.add(i);
+            } else {
+                entities.add(mapper.dtoToEntity(recommendations.get(i)));
+            }
+        }
+
+        return repository.upsertAll(entities)
+                .log(logger.getName(), FINE)
+                .thenMany(Flux.fromIterable(invalidPositions));
+    }
+
+    /**
+     * Deletes the recommendations of all given products with a single server-side delete,
+     * used when DELETE events are consumed in batches.
+     *
+     * @return the number of deleted recommendations
+     */
+    public Mono<Long> deleteRecommendations(Collection<Integer> productIds) {
+        logger.debug("deleteRecommendations: deleting recommendations for {} productIds", productIds.size());
+        return repository.deleteByProductIdIn(productIds)
+                .log(logger.getName(), FINE);
+    }
+
+    private Flux<Integer> insertAll(List<RecommendationEntity> entities, int offset) {
+        if (entities.isEmpty()) {
+            return Flux.empty();
+        }
+
+        // New entities are saved with one ordered insertMany, which stops at the first duplicate.
+        // Everything before it is stored, so the insert continues with the entities after it.
+        return repository.saveAll(entities)
+                .log(logger.getName(), FINE)
+                .thenMany(Flux.<Integer>empty())
+                .onErrorResume(DataIntegrityViolationException.class, ex -> {
+                    Integer failedIndex = firstFailedIndex(ex);
+                    if (failedIndex == null) {
+                        return Flux.error(ex);
+                    }
+
+                    return Flux.concat(
+                            Flux.just(offset + failedIndex),
+                            insertAll(entities.subList(failedIndex + 1, entities.size()), offset + failedIndex + 1));
+                });
+    }
+
+    private Integer firstFailedIndex(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoBulkWriteException bulkWriteException && !bulkWriteException.getWriteErrors().isEmpty()) {
+                return bulkWriteException.getWriteErrors().get(0).getIndex();
+            }
+        }
+        return null;
     }
 
     private Recommendation setServiceAddress(Recommendation recommendation) {
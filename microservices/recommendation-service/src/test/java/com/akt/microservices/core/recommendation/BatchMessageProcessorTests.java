@@ -0,0 +1,89 @@
+package com.akt.microservices.core.recommendation;
+
+import com.akt.api.core.recommendation.Recommendation;
+import com.akt.api.event.Event;
+import com.akt.microservices.core.recommendation.persistence.RecommendationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static com.akt.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.cloud.stream.defaultBinder=rabbit",
+        "eureka.client.enabled=false",
+        "app.messageProcessor.mode=batch"})
+class BatchMessageProcessorTests extends MongoDbTestBase {
+
+    @Autowired
+    private RecommendationRepository repository;
+
+    @Autowired
+    @Qualifier("messageProcessor")
+    private Consumer<List<Event<Integer, Recommendation>>> messageProcessor;
+
+    @MockitoBean
+    private StreamBridge streamBridge;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll().block();
+        when(streamBridge.send(anyString(), any())).thenReturn(true);
+    }
+
+    @Test
+    void createAndDeleteInOneBatch() {
+        messageProcessor.accept(List.of(createEvent(1, 1), createEvent(2, 1), createEvent(2, 2), deleteEvent(2), createEvent(3, 1)));
+
+        assertEquals(2, (long) repository.count().block());
+        assertEquals(0, repository.findByProductId(2).count().block());
+        verifyNoInteractions(streamBridge);
+    }
+
+    @Test
+    void failedEventsAreDeadLettered() {
+        messageProcessor.accept(List.of(createEvent(1, 1)));
+
+        messageProcessor.accept(List.of(createEvent(1, 2), createEvent(1, 1), createEvent(2, 1), createEvent(2, 1), createEvent(0, 1)));
+
+        assertEquals(3, (long) repository.count().block());
+        verify(streamBridge, times(3)).send(eq("deadLetters-out-0"), any());
+    }
+
+    @Test
+    void processedEventsAreSkipped() {
+        Event<Integer, Recommendation> event = createEvent(1, 1);
+        messageProcessor.accept(List.of(event));
+        repository.deleteAll().block();
+
+        // The resent event isn't stored again, even though it isn't in the repository anymore
+        messageProcessor.accept(List.of(event, createEvent(2, 1)));
+
+        assertEquals(1, (long) repository.count().block());
+        verifyNoInteractions(streamBridge);
+    }
+
+    private Event<Integer, Recommendation> createEvent(int productId, int id) {
+        return new Event<>(CREATE, productId, new Recommendation(productId, id, "a", 1, "c", "SA"));
+    }
+
+    private Event<Integer, Recommendation> deleteEvent(int productId) {
+        return new Event<>(DELETE, productId, null);
+    }
+}
@@ -69,6 +69,16 @@ class PersistenceTests extends MongoDbTestBase{
         assertNotEquals(Boolean.TRUE, repository.existsById(savedEntity.getId()).block());
     }
 
+    @Test
+    void deleteByProductId() {
+        repository.save(new RecommendationEntity(savedEntity.getProductId(), 3, "a3", 3, "c3")).block();
+        repository.save(new RecommendationEntity(savedEntity.getProductId() + 1, 1, "a1", 1, "c1")).block();
+
+        assertEquals(2, repository.deleteByProductId(savedEntity.getProductId()).block());
+        assertThat(repository.findByProductId(savedEntity.getProductId()).collectList().block(), hasSize(0));
+        assertEquals(1, repository.count().block());
+    }
+
     @Test
     void duplicateError() {
         assertThrows(DuplicateKeyException.class, () -> {
@@ -77,6 +87,18 @@ class PersistenceTests extends MongoDbTestBase{
         });
     }
 
+    @Test
+    void upsert() {
+        RecommendationEntity upsertedEntity = repository.upsert(new RecommendationEntity(2, 2, "a2", 2, "c2")).block();
+
+        assertEquals(savedEntity.getId(), upsertedEntity.getId());
+        assertEquals(1, (int) upsertedEntity.getVersion());
+        assertEquals("a2", upsertedEntity.getAuthor());
+
+        repository.upsertAll(List.of(new RecommendationEntity(2, 3, "a3", 3, "c3"))).block();
+        assertEquals(2, (long) repository.count().block());
+    }
+
     @Test
     void optimisticLockError() {
 
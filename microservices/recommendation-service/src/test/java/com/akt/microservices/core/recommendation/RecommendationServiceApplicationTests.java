@@ -13,6 +13,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.akt.api.event.Event.Type.CREATE;
 import static com.akt.api.event.Event.Type.DELETE;
@@ -65,6 +67,43 @@ class RecommendationServiceApplicationTests extends MongoDbTestBase{
 				.jsonPath("$[2].recommendationId").isEqualTo(3);
 	}
 
+	@Test
+	void getRecommendationsByProductIds(){
+		sendCreateRecommendationEvent(1, 1);
+		sendCreateRecommendationEvent(1, 2);
+		sendCreateRecommendationEvent(2, 1);
+		sendCreateRecommendationEvent(3, 1);
+
+		getAndVerifyRecommendationsByProductId("?productIds=1,2", OK)
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	void getRecommendationsTooManyProductIds(){
+		String productIds = IntStream.rangeClosed(1, 101).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+		getAndVerifyRecommendationsByProductId("?productIds=" + productIds, UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Too many productIds: 101, at most 100 are allowed");
+	}
+
+	@Test
+	void getRecommendationsPage(){
+		int productId = 1;
+
+		sendCreateRecommendationEvent(productId, 3);
+		sendCreateRecommendationEvent(productId, 1);
+		sendCreateRecommendationEvent(productId, 2);
+
+		getAndVerifyRecommendationsByProductId("?productId=" + productId + "&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].recommendationId").isEqualTo(1)
+				.jsonPath("$[1].recommendationId").isEqualTo(2);
+
+		getAndVerifyRecommendationsByProductId("?productId=" + productId + "&afterRecommendationId=2&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].recommendationId").isEqualTo(3);
+	}
+
 	@Test
 	void getRecommendationsNotFound() {
 		int productId = 113;
@@ -11,6 +11,8 @@ import org.springframework.context.annotation.ComponentScan;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
+import java.util.concurrent.Executors;
+
 @SpringBootApplication
 @ComponentScan("com.akt")
 public class ReviewServiceApplication {
@@ -19,16 +21,25 @@ public class ReviewServiceApplication {
 
 	private final Integer threadPoolSize;
 	private final Integer taskQueueSize;
+	private final boolean virtualThreads;
 
 	public ReviewServiceApplication(
 			@Value("${app.threadPoolSize:10}") Integer threadPoolSize,
-			@Value("${app.taskQueueSize:100}") Integer taskQueueSize) {
+			@Value("${app.taskQueueSize:100}") Integer taskQueueSize,
+			@Value("${app.virtualThreads:false}") boolean virtualThreads) {
 		this.threadPoolSize = threadPoolSize;
 		this.taskQueueSize = taskQueueSize;
+		this.virtualThreads = virtualThreads;
 	}
 
 	@Bean
 	public Scheduler jdbcScheduler(){
+		if (virtualThreads) {
+			// Each blocking JDBC call gets its own virtual thread, concurrency is bounded by the Hikari pool instead
+			logger.info("Creating a scheduler with one virtual thread per task");
+			return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "jdbc-virtual");
+		}
+
 		logger.info("Creating a scheduler with thread pool size: {}", threadPoolSize);
 		return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "jdbc-pool");
 	}
@@ -0,0 +1,61 @@
+package com.akt.microservices.core.review.persistence;
+
+import com.akt.util.messaging.ProcessedEventStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the ids of processed events in the processed_events table, running the blocking JDBC
+ * calls on the jdbcScheduler. Every CLEANUP_INTERVAL added ids, the ids older than
+ * ProcessedEventStore.RETENTION are deleted.
+ */
+@Component
+@Profile("!r2dbc")
+@ConditionalOnProperty(name = "app.eventDedup.store", havingValue = "true")
+public class JdbcProcessedEventStore implements ProcessedEventStore {
+
+    static final String SELECT_EVENT = "SELECT COUNT(*) FROM processed_events WHERE event_id = ?";
+    static final String INSERT_EVENT = "INSERT IGNORE INTO processed_events (event_id, processed_at) VALUES (?, ?)";
+    static final String DELETE_EXPIRED_EVENTS = "DELETE FROM processed_events WHERE processed_at < ?";
+    static final int CLEANUP_INTERVAL = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Scheduler jdbcScheduler;
+    private final AtomicLong addedCount = new AtomicLong();
+
+    @Autowired
+    public JdbcProcessedEventStore(JdbcTemplate jdbcTemplate, @Qualifier("jdbcScheduler") Scheduler jdbcScheduler) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcScheduler = jdbcScheduler;
+    }
+
+    @Override
+    public Mono<Boolean> contains(String eventId) {
+        return Mono.fromCallable(() -> jdbcTemplate.queryForObject(SELECT_EVENT, Integer.class, eventId) > 0)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Mono<Void> add(String eventId) {
+        return Mono.fromRunnable(() -> {
+                    Instant now = Instant.now();
+                    jdbcTemplate.update(INSERT_EVENT, eventId, Timestamp.from(now));
+                    if (addedCount.incrementAndGet() % CLEANUP_INTERVAL == 0) {
+                        jdbcTemplate.update(DELETE_EXPIRED_EVENTS, Timestamp.from(now.minus(DurationStyle.detectAndParse(RETENTION))));
+                    }
+                })
+                .subscribeOn(jdbcScheduler)
+                .then();
+    }
+}
@@ -0,0 +1,163 @@
+package com.akt.microservices.core.review.persistence;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Runs the blocking JPA repository on the jdbcScheduler. The time each call waits for the
+ * scheduler before it starts is published as the "review.jdbc.queue" timer.
+ */
+@Component
+@Profile("!r2dbc")
+public class JpaReviewPersistence implements ReviewPersistence {
+
+    private static final String INSERT_REVIEW =
+            "INSERT INTO reviews (version, product_id, review_id, author, subject, content) VALUES (0, ?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_REVIEW = INSERT_REVIEW + " AS new ON DUPLICATE KEY UPDATE"
+            + " version = reviews.version + 1, author = new.author, subject = new.subject, content = new.content";
+
+    private final ReviewRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Scheduler jdbcScheduler;
+    private final Timer queueTimer;
+
+    @Autowired
+    public JpaReviewPersistence(ReviewRepository repository,
+                                JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                @Qualifier("jdbcScheduler") Scheduler jdbcScheduler,
+                                MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcScheduler = jdbcScheduler;
+        this.queueTimer = Timer.builder("review.jdbc.queue")
+                .description("Time blocking JDBC calls wait for the jdbcScheduler")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductId(int productId, Integer afterReviewId, Integer limit) {
+        // Pages are read with a keyset query on the (productId, reviewId) index
+        return onJdbcScheduler(() -> (afterReviewId == null && limit == null)
+                        ? repository.findByProductId(productId)
+                        : repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(
+                                productId,
+                                afterReviewId == null ? Integer.MIN_VALUE : afterReviewId,
+                                limit == null ? Pageable.unpaged() : PageRequest.of(0, limit)))
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductIdIn(Collection<Integer> productIds) {
+        return onJdbcScheduler(() -> repository.findByProductIdIn(productIds))
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    @Override
+    public Mono<ReviewEntity> save(ReviewEntity entity) {
+        return onJdbcScheduler(() -> repository.save(entity));
+    }
+
+    @Override
+    public Flux<Integer> insertAll(List<ReviewEntity> entities) {
+        return onJdbcScheduler(() -> internalInsertAll(entities))
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    @Override
+    public Mono<Void> upsert(ReviewEntity entity) {
+        return onJdbcScheduler(() -> jdbcTemplate.update(UPSERT_REVIEW, ps -> setInsertParameters(ps, entity)))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> upsertAll(List<ReviewEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return onJdbcScheduler(() -> transactionTemplate.execute(status ->
+                        jdbcTemplate.batchUpdate(UPSERT_REVIEW, entities, entities.size(), this::setInsertParameters)))
+                .then();
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductId(int productId) {
+        return onJdbcScheduler(() -> repository.deleteByProductId(productId));
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductIdIn(Collection<Integer> productIds) {
+        return onJdbcScheduler(() -> repository.deleteByProductIdIn(productIds));
+    }
+
+    private List<Integer> internalInsertAll(List<ReviewEntity> entities) {
+        if (entities.isEmpty()) {
+            return List.of();
+        }
+
+        try {
+            // One JDBC batch in one transaction, so either all entities are inserted or none
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_REVIEW, entities, entities.size(), this::setInsertParameters));
+            return List.of();
+        }
+        catch (DataIntegrityViolationException exception) {
+            // Find the offending entities by inserting them one by one
+            List<Integer> failedPositions = new ArrayList<>();
+            for (int i = 0; i < entities.size(); i++) {
+                ReviewEntity entity = entities.get(i);
+                try {
+                    jdbcTemplate.update(INSERT_REVIEW, ps -> setInsertParameters(ps, entity));
+                }
+                catch (DataIntegrityViolationException entityException) {
+                    failedPositions.add(i);
+                }
+            }
+            return failedPositions;
+        }
+    }
+
+    private void setInsertParameters(PreparedStatement ps, ReviewEntity entity) throws SQLException {
+        ps.setInt(1, entity.getProductId());
+        ps.setInt(2, entity.getReviewId());
+        ps.setString(3, entity.getAuthor());
+        ps.setString(4, entity.getSubject());
+        ps.setString(5, entity.getContent());
+    }
+
+    private <T> Mono<T> onJdbcScheduler(Callable<T> call) {
+        return Mono.defer(() -> {
+            long queuedAt = System.nanoTime();
+            return Mono.fromCallable(() -> {
+                queueTimer.record(System.nanoTime() - queuedAt, NANOSECONDS);
+                return call.call();
+            }).subscribeOn(jdbcScheduler);
+        });
+    }
+}
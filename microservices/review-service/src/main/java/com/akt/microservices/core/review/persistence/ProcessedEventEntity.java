@@ -0,0 +1,31 @@
+package com.akt.microservices.core.review.persistence;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Maps the processed_events table, so that it is created together with the reviews table.
+ * It is only accessed with plain SQL, see JdbcProcessedEventStore and R2dbcProcessedEventStore.
+ */
+@Entity
+@Table(name = "processed_events", indexes = {@Index(name = "processed_events_processed_at_idx", columnList = "processedAt")})
+public class ProcessedEventEntity {
+    @Id
+    private String eventId;
+    private Instant processedAt;
+
+    public ProcessedEventEntity() {
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+}
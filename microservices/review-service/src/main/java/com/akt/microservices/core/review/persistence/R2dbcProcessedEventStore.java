@@ -0,0 +1,63 @@
+package com.akt.microservices.core.review.persistence;
+
+import com.akt.util.messaging.ProcessedEventStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.akt.microservices.core.review.persistence.JdbcProcessedEventStore.CLEANUP_INTERVAL;
+
+/**
+ * Keeps the ids of processed events in the processed_events table over R2DBC, with the same
+ * cleanup of expired ids as JdbcProcessedEventStore.
+ */
+@Component
+@Profile("r2dbc")
+@ConditionalOnProperty(name = "app.eventDedup.store", havingValue = "true")
+public class R2dbcProcessedEventStore implements ProcessedEventStore {
+
+    private final DatabaseClient databaseClient;
+    private final AtomicLong addedCount = new AtomicLong();
+
+    @Autowired
+    public R2dbcProcessedEventStore(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<Boolean> contains(String eventId) {
+        return databaseClient.sql("SELECT COUNT(*) AS count FROM processed_events WHERE event_id = :eventId")
+                .bind("eventId", eventId)
+                .map(row -> row.get("count", Long.class))
+                .one()
+                .map(count -> count > 0);
+    }
+
+    @Override
+    public Mono<Void> add(String eventId) {
+        Instant now = Instant.now();
+        Mono<Long> insert = databaseClient.sql("INSERT IGNORE INTO processed_events (event_id, processed_at) VALUES (:eventId, :processedAt)")
+                .bind("eventId", eventId)
+                .bind("processedAt", LocalDateTime.ofInstant(now, ZoneOffset.UTC))
+                .fetch()
+                .rowsUpdated();
+
+        if (addedCount.incrementAndGet() % CLEANUP_INTERVAL != 0) {
+            return insert.then();
+        }
+        return insert.then(databaseClient.sql("DELETE FROM processed_events WHERE processed_at < :expiredAt")
+                .bind("expiredAt", LocalDateTime.ofInstant(now.minus(DurationStyle.detectAndParse(RETENTION)), ZoneOffset.UTC))
+                .fetch()
+                .rowsUpdated())
+                .then();
+    }
+}
@@ -0,0 +1,186 @@
+package com.akt.microservices.core.review.persistence;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Non-blocking access to the reviews table over R2DBC, using the same schema as the JPA mapping
+ * of {@link ReviewEntity}. Ids are taken from Hibernate's reviews_seq table, see {@link ReviewIdAllocator}.
+ */
+@Component
+@Profile("r2dbc")
+public class R2dbcReviewPersistence implements ReviewPersistence {
+
+    private static final String SELECT_REVIEWS =
+            "SELECT id, version, product_id, review_id, author, subject, content FROM reviews";
+
+    private static final String INSERT_REVIEWS =
+            "INSERT INTO reviews (id, version, product_id, review_id, author, subject, content) VALUES ";
+
+    private static final String ON_DUPLICATE_KEY_UPDATE = " AS new ON DUPLICATE KEY UPDATE"
+            + " version = reviews.version + 1, author = new.author, subject = new.subject, content = new.content";
+
+    private final DatabaseClient databaseClient;
+    private final ReviewIdAllocator idAllocator;
+
+    @Autowired
+    public R2dbcReviewPersistence(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        this.idAllocator = new ReviewIdAllocator(databaseClient);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductId(int productId, Integer afterReviewId, Integer limit) {
+        if (afterReviewId == null && limit == null) {
+            return databaseClient.sql(SELECT_REVIEWS + " WHERE product_id = :productId")
+                    .bind("productId", productId)
+                    .map(this::toEntity)
+                    .all();
+        }
+
+        // Pages are read with a keyset query on the (product_id, review_id) index
+        GenericExecuteSpec spec = databaseClient.sql(SELECT_REVIEWS
+                        + " WHERE product_id = :productId AND review_id > :afterReviewId ORDER BY review_id"
+                        + (limit == null ? "" : " LIMIT :limit"))
+                .bind("productId", productId)
+                .bind("afterReviewId", afterReviewId == null ? Integer.MIN_VALUE : afterReviewId);
+
+        if (limit != null) {
+            spec = spec.bind("limit", limit);
+        }
+        return spec.map(this::toEntity).all();
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductIdIn(Collection<Integer> productIds) {
+        return databaseClient.sql(SELECT_REVIEWS + " WHERE product_id IN (:productIds)")
+                .bind("productIds", productIds)
+                .map(this::toEntity)
+                .all();
+    }
+
+    @Override
+    public Mono<ReviewEntity> save(ReviewEntity entity) {
+        return idAllocator.allocate(1)
+                .flatMap(ids -> bindInsertParameters(databaseClient.sql(INSERT_REVIEWS + insertValues("")), entity, ids.get(0), "")
+                        .fetch()
+                        .rowsUpdated()
+                        .map(rowsUpdated -> {
+                            entity.setId(ids.get(0));
+                            entity.setVersion(0);
+                            return entity;
+                        }));
+    }
+
+    @Override
+    public Flux<Integer> insertAll(List<ReviewEntity> entities) {
+        if (entities.isEmpty()) {
+            return Flux.empty();
+        }
+
+        // A single multi-row INSERT, so either all entities are inserted or none
+        return insertMany(entities, "")
+                .flatMap(spec -> spec.fetch().rowsUpdated())
+                .thenMany(Flux.<Integer>empty())
+                .onErrorResume(DataIntegrityViolationException.class, ex ->
+                        // Find the offending entities by inserting them one by one
+                        Flux.range(0, entities.size())
+                                .concatMap(i -> save(entities.get(i))
+                                        .then(Mono.<Integer>empty())
+                                        .onErrorResume(DataIntegrityViolationException.class, entityException -> Mono.just(i))));
+    }
+
+    @Override
+    public Mono<Void> upsert(ReviewEntity entity) {
+        // An existing review keeps its id, the allocated one is left unused
+        return idAllocator.allocate(1)
+                .flatMap(ids -> bindInsertParameters(databaseClient.sql(INSERT_REVIEWS + insertValues("") + ON_DUPLICATE_KEY_UPDATE), entity, ids.get(0), "")
+                        .fetch()
+                        .rowsUpdated())
+                .then();
+    }
+
+    @Override
+    public Mono<Void> upsertAll(List<ReviewEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return insertMany(entities, ON_DUPLICATE_KEY_UPDATE)
+                .flatMap(spec -> spec.fetch().rowsUpdated())
+                .then();
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductId(int productId) {
+        return databaseClient.sql("DELETE FROM reviews WHERE product_id = :productId")
+                .bind("productId", productId)
+                .fetch()
+                .rowsUpdated()
+                .map(Long::intValue);
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductIdIn(Collection<Integer> productIds) {
+        return databaseClient.sql("DELETE FROM reviews WHERE product_id IN (:productIds)")
+                .bind("productIds", productIds)
+                .fetch()
+                .rowsUpdated()
+                .map(Long::intValue);
+    }
+
+    private Mono<GenericExecuteSpec> insertMany(List<ReviewEntity> entities, String onDuplicateKey) {
+        StringBuilder sql = new StringBuilder(INSERT_REVIEWS);
+        for (int i = 0; i < entities.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(insertValues(String.valueOf(i)));
+        }
+        sql.append(onDuplicateKey);
+
+        return idAllocator.allocate(entities.size()).map(ids -> {
+            GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+            for (int i = 0; i < entities.size(); i++) {
+                spec = bindInsertParameters(spec, entities.get(i), ids.get(i), String.valueOf(i));
+            }
+            return spec;
+        });
+    }
+
+    private String insertValues(String suffix) {
+        return "(:id" + suffix + ", 0, :productId" + suffix + ", :reviewId" + suffix + ", :author" + suffix + ", :subject" + suffix + ", :content" + suffix + ")";
+    }
+
+    private GenericExecuteSpec bindInsertParameters(GenericExecuteSpec spec, ReviewEntity entity, int id, String suffix) {
+        spec = spec.bind("id" + suffix, id)
+                .bind("productId" + suffix, entity.getProductId())
+                .bind("reviewId" + suffix, entity.getReviewId());
+        spec = bindNullable(spec, "author" + suffix, entity.getAuthor());
+        spec = bindNullable(spec, "subject" + suffix, entity.getSubject());
+        return bindNullable(spec, "content" + suffix, entity.getContent());
+    }
+
+    private GenericExecuteSpec bindNullable(GenericExecuteSpec spec, String name, String value) {
+        return (value == null) ? spec.bindNull(name, String.class) : spec.bind(name, value);
+    }
+
+    private ReviewEntity toEntity(Readable row) {
+        ReviewEntity entity = new ReviewEntity(
+                row.get("product_id", Integer.class),
+                row.get("review_id", Integer.class),
+                row.get("author", String.class),
+                row.get("subject", String.class),
+                row.get("content", String.class));
+        entity.setId(row.get("id", Integer.class));
+        entity.setVersion(row.get("version", Integer.class));
+        return entity;
+    }
+}
@@ -0,0 +1,74 @@
+package com.akt.microservices.core.review.persistence;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Allocates the ids of reviews inserted over R2DBC from the reviews_seq table that Hibernate uses for
+ * {@link ReviewEntity}, so the JPA and R2DBC modes can write to the same database. Like Hibernate's
+ * pooled optimizer, a round trip moves next_val on by ALLOCATION_SIZE and reserves the block of ids
+ * that ends at the value read.
+ */
+class ReviewIdAllocator {
+
+    // The allocation size of Hibernate's default sequence generator
+    private static final int ALLOCATION_SIZE = 50;
+
+    // Hibernate takes ids 1 to 51 from the first two blocks when it reads the initial value 1
+    private static final long FIRST_FREE_ID = ALLOCATION_SIZE + 2;
+
+    private static final int MAX_ATTEMPTS = 100;
+
+    private final DatabaseClient databaseClient;
+    private final Deque<Integer> ids = new ArrayDeque<>();
+
+    ReviewIdAllocator(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    Mono<List<Integer>> allocate(int count) {
+        return Mono.defer(() -> {
+            List<Integer> allocated = take(count);
+            return allocated != null ? Mono.just(allocated) : reserveBlock().then(allocate(count));
+        });
+    }
+
+    private synchronized List<Integer> take(int count) {
+        if (ids.size() < count) {
+            return null;
+        }
+
+        List<Integer> allocated = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            allocated.add(ids.poll());
+        }
+        return allocated;
+    }
+
+    private Mono<Void> reserveBlock() {
+        return databaseClient.sql("SELECT next_val FROM reviews_seq")
+                .map(row -> row.get("next_val", Long.class))
+                .one()
+                .flatMap(value -> databaseClient.sql("UPDATE reviews_seq SET next_val = :nextValue WHERE next_val = :value")
+                        .bind("nextValue", value + ALLOCATION_SIZE)
+                        .bind("value", value)
+                        .fetch()
+                        .rowsUpdated()
+                        // Another writer moved next_val on first, so it is read again
+                        .flatMap(updated -> updated == 1 ? Mono.just(value) : Mono.<Long>empty()))
+                .repeatWhenEmpty(MAX_ATTEMPTS, attempts -> attempts)
+                .doOnNext(this::addBlock)
+                .then();
+    }
+
+    private synchronized void addBlock(long lastId) {
+        for (long id = Math.max(FIRST_FREE_ID, lastId - ALLOCATION_SIZE + 1); id <= lastId; id++) {
+            ids.add((int) id);
+        }
+    }
+}
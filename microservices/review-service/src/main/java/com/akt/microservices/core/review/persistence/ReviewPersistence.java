@@ -0,0 +1,52 @@
+package com.akt.microservices.core.review.persistence;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reactive access to the reviews table.
+ *
+ * The default implementation wraps the blocking JPA repository on the jdbcScheduler,
+ * the "r2dbc" profile selects a non-blocking R2DBC implementation instead.
+ */
+public interface ReviewPersistence {
+
+    Flux<ReviewEntity> findByProductId(int productId, Integer afterReviewId, Integer limit);
+
+    Flux<ReviewEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    Mono<ReviewEntity> save(ReviewEntity entity);
+
+    /**
+     * Inserts the entities in one batch, used when CREATE events are consumed in batches.
+     *
+     * @return the positions in entities of the entities that could not be inserted
+     * since their key already exists
+     */
+    Flux<Integer> insertAll(List<ReviewEntity> entities);
+
+    /**
+     * Inserts the entity or overwrites the review with the same key with INSERT ... ON DUPLICATE KEY UPDATE,
+     * used for CREATE events when app.messageProcessor.createMode is "upsert".
+     */
+    Mono<Void> upsert(ReviewEntity entity);
+
+    /**
+     * Inserts or overwrites the entities in one batch, used when CREATE events are consumed in batches
+     * and app.messageProcessor.createMode is "upsert".
+     */
+    Mono<Void> upsertAll(List<ReviewEntity> entities);
+
+    /**
+     * @return the number of deleted reviews
+     */
+    Mono<Integer> deleteByProductId(int productId);
+
+    /**
+     * @return the number of deleted reviews
+     */
+    Mono<Integer> deleteByProductIdIn(Collection<Integer> productIds);
+}
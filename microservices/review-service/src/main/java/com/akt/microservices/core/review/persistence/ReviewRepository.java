@@ -1,11 +1,37 @@
 package com.akt.microservices.core.review.persistence;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int afterReviewId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Deletes all reviews of a product with a single statement, without loading them first.
+     *
+     * @return the number of deleted reviews
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ReviewEntity r WHERE r.productId = :productId")
+    int deleteByProductId(@Param("productId") int productId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ReviewEntity r WHERE r.productId IN :productIds")
+    int deleteByProductIdIn(@Param("productIds") Collection<Integer> productIds);
 }
@@ -0,0 +1,110 @@
+package com.akt.microservices.core.review.persistence;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Detects virtual threads of the jdbcScheduler being pinned to their carrier thread, e.g. by
+ * synchronized blocks in JPA, Hibernate, Hikari or MySQL driver code, using the JFR
+ * jdk.VirtualThreadPinned event.
+ *
+ * Pinned time is published as the "review.jdbc.pinned" timer, tagged with the library that
+ * caused it. Pinning in those libraries is also logged with the offending frame.
+ */
+@Component
+@ConditionalOnProperty(name = "app.virtualThreads", havingValue = "true")
+public class VirtualThreadPinningMonitor implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final Map<String, String> SOURCES = new LinkedHashMap<>();
+
+    static {
+        SOURCES.put("com.mysql.", "mysql");
+        SOURCES.put("com.zaxxer.hikari.", "hikari");
+        SOURCES.put("org.hibernate.", "hibernate");
+        SOURCES.put("org.springframework.orm.", "jpa");
+        SOURCES.put("org.springframework.data.jpa.", "jpa");
+        SOURCES.put("jakarta.persistence.", "jpa");
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final RecordingStream recordingStream;
+
+    @Autowired
+    public VirtualThreadPinningMonitor(
+            @Value("${app.pinnedThreshold:20ms}") Duration pinnedThreshold,
+            MeterRegistry meterRegistry) {
+
+        this.meterRegistry = meterRegistry;
+
+        logger.info("Monitoring virtual thread pinning longer than {}", pinnedThreshold);
+        this.recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(pinnedThreshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+    }
+
+    @Override
+    public void destroy() {
+        recordingStream.close();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedFrame frame = findSourceFrame(event.getStackTrace());
+        String source = (frame == null) ? "other" : sourceOf(frame);
+
+        Timer.builder("review.jdbc.pinned")
+                .description("Time virtual threads were pinned to their carrier thread")
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(event.getDuration());
+
+        if (frame != null) {
+            logger.warn("Virtual thread pinned for {} ms in {}.{}:{}",
+                    event.getDuration().toMillis(),
+                    frame.getMethod().getType().getName(),
+                    frame.getMethod().getName(),
+                    frame.getLineNumber());
+        }
+    }
+
+    private RecordedFrame findSourceFrame(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return null;
+        }
+
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame() && sourceOf(frame) != null) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private String sourceOf(RecordedFrame frame) {
+        String className = frame.getMethod().getType().getName();
+        return SOURCES.entrySet().stream()
+                .filter(source -> className.startsWith(source.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -1,55 +1,110 @@
 package com.akt.microservices.core.review.services;
 
 import com.akt.api.core.review.Review;
-import com.akt.api.core.review.ReviewService;
 import com.akt.api.event.Event;
-import com.akt.api.exceptions.EventProcessingException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.akt.util.messaging.KeyOrderedLanes;
+import com.akt.util.messaging.MessageProcessorSupport;
+import com.akt.util.messaging.ProcessedEventStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Stores the review events, see MessageProcessorSupport for the processing modes.
+ */
 @Configuration
-public class MessageProcessorConfig {
+public class MessageProcessorConfig extends MessageProcessorSupport<Review> {
 
-  private static final Logger logger = LoggerFactory.getLogger(MessageProcessorConfig.class);
-
-  private final ReviewService reviewService;
+  private final ReviewServiceImpl reviewService;
 
   @Autowired
-  public MessageProcessorConfig(ReviewService reviewService) {
+  public MessageProcessorConfig(
+    ReviewServiceImpl reviewService,
+    StreamBridge streamBridge,
+    MeterRegistry meterRegistry,
+    @Value("${app.messageProcessor.concurrency:16}") int concurrency,
+    @Value("${app.messageProcessor.maxInFlight:256}") int maxInFlight,
+    @Value("${app.messageProcessor.createMode:insert}") String createMode,
+    @Value("${app.eventDedup.cacheSize:100000}") int dedupCacheSize,
+    ObjectProvider<ProcessedEventStore> processedEventStore) {
+
+    super("reviews", streamBridge, meterRegistry, concurrency, maxInFlight, createMode, dedupCacheSize,
+      processedEventStore.getIfAvailable());
     this.reviewService = reviewService;
   }
 
   @Bean
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "single", matchIfMissing = true)
   public Consumer<Event<Integer, Review>> messageProcessor() {
-    return event -> {
-      logger.info("Process message created at {}...", event.getEventCreatedAt());
-
-      switch (event.getEventType()) {
-
-        case CREATE:
-          Review review = event.getData();
-          logger.info("Create review with ID: {}/{}", review.getProductId(), review.getReviewId());
-          reviewService.createReview(review).block();
-          break;
-
-        case DELETE:
-          int productId = event.getKey();
-          logger.info("Delete reviews with ProductID: {}", productId);
-          reviewService.deleteReviews(productId).block();
-          break;
-
-        default:
-          String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-          logger.warn(errorMessage);
-          throw new EventProcessingException(errorMessage);
-      }
-
-      logger.info("Message processing done!");
-    };
+    return singleProcessor();
+  }
+
+  @Bean(name = "messageProcessor")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "batch")
+  public Consumer<List<Event<Integer, Review>>> messageBatchProcessor() {
+    return batchProcessor();
+  }
+
+  @Bean(name = "messageProcessor")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "reactive")
+  public Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageReactiveProcessor() {
+    return reactiveProcessor();
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "reactive")
+  public ListenerContainerCustomizer<AbstractMessageListenerContainer<?, ?>> asyncAcksCustomizer() {
+    return asyncAcks();
+  }
+
+  @Bean(name = "messageProcessor")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "lanes")
+  public Consumer<Message<Event<Integer, Review>>> messageLanesProcessor(KeyOrderedLanes messageProcessorLanes) {
+    return lanesProcessor(messageProcessorLanes);
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = "lanes")
+  public KeyOrderedLanes messageProcessorLanes() {
+    return createLanes();
+  }
+
+  @Override
+  protected Mono<Review> create(Review review, boolean upsert) {
+    return upsert ? reviewService.upsertReview(review) : reviewService.createReview(review);
+  }
+
+  @Override
+  protected Mono<Void> delete(int productId) {
+    return reviewService.deleteReviews(productId);
+  }
+
+  @Override
+  protected Flux<Integer> createAll(List<Review> reviews, boolean upsert) {
+    return upsert ? reviewService.upsertReviews(reviews) : reviewService.createReviews(reviews);
+  }
+
+  @Override
+  protected Mono<Integer> deleteAll(List<Integer> productIds) {
+    return reviewService.deleteReviews(productIds);
+  }
+
+  @Override
+  protected String describe(Review review) {
+    return "review with ID: " + review.getProductId() + "/" + review.getReviewId();
   }
 }
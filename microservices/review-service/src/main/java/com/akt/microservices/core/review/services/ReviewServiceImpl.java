@@ -4,20 +4,22 @@ import com.akt.api.core.review.Review;
 import com.akt.api.core.review.ReviewService;
 import com.akt.api.exceptions.InvalidInputException;
 import com.akt.microservices.core.review.persistence.ReviewEntity;
-import com.akt.microservices.core.review.persistence.ReviewRepository;
+import com.akt.microservices.core.review.persistence.ReviewPersistence;
 import com.akt.util.http.ServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Scheduler;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import static com.akt.util.http.ConditionalGetFilter.unlessNotModified;
 import static java.util.logging.Level.FINE;
 
 @RestController
@@ -25,32 +27,54 @@ public class ReviewServiceImpl implements ReviewService {
 
     private static final Logger logger = LoggerFactory.getLogger(ReviewServiceImpl.class);
 
-    private final ReviewRepository repository;
+    private final ReviewPersistence persistence;
     private final ReviewMapper mapper;
     private final ServiceUtil serviceUtil;
-    private final Scheduler jdbcScheduler;
+    private final int maxProductIds;
 
     @Autowired
-    public ReviewServiceImpl(ReviewRepository repository,
+    public ReviewServiceImpl(ReviewPersistence persistence,
                              ReviewMapper mapper,
                              ServiceUtil serviceUtil,
-                             @Qualifier("jdbcScheduler") Scheduler jdbcScheduler) {
-        this.repository = repository;
+                             @Value("${app.maxProductIds:100}") int maxProductIds) {
+        this.persistence = persistence;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
-        this.jdbcScheduler = jdbcScheduler;
+        this.maxProductIds = maxProductIds;
     }
 
     @Override
-    public Flux<Review> getReviews(int productId) {
+    public Flux<Review> getReviews(int productId, Integer afterReviewId, Integer limit) {
         if(productId < 1){
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
         }
 
-        return Mono.fromCallable(() -> internalGetReviews(productId))
-                .flatMapMany(Flux::fromIterable)
-                .log(logger.getName(), FINE)
-                .subscribeOn(jdbcScheduler);
+        if(limit != null && limit < 1){
+            throw InvalidInputException.withoutStackTrace("Invalid limit: " + limit);
+        }
+
+        // Unchanged reviews are answered with a 304 before they are mapped
+        return unlessNotModified(persistence.findByProductId(productId, afterReviewId, limit), ReviewEntity::getId, ReviewEntity::getVersion)
+                .map(this::toApi)
+                .log(logger.getName(), FINE);
+    }
+
+    @Override
+    public Flux<Review> getReviewsByProductIds(List<Integer> productIds) {
+        if(productIds.size() > maxProductIds){
+            throw InvalidInputException.withoutStackTrace(
+                    "Too many productIds: " + productIds.size() + ", at most " + maxProductIds + " are allowed");
+        }
+
+        productIds.forEach(productId -> {
+            if(productId < 1){
+                throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
+            }
+        });
+
+        return persistence.findByProductIdIn(productIds)
+                .map(this::toApi)
+                .log(logger.getName(), FINE);
     }
 
     @Override
@@ -58,48 +82,108 @@ public class ReviewServiceImpl implements ReviewService {
         int productId = body.getProductId();
 
         if(productId < 1){
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
         }
 
-        return Mono.fromCallable(() -> internalCreateReview(body))
-                .subscribeOn(jdbcScheduler);
+        ReviewEntity entity = mapper.apiToEntity(body);
+        return persistence.save(entity)
+                .log(logger.getName(), FINE)
+                .onErrorMap(
+                        DataIntegrityViolationException.class,
+                        ex -> InvalidInputException.withoutStackTrace("Duplicate key, Product Id:" + body.getProductId() + ", Review Id:" + body.getReviewId()))
+                .doOnNext(newEntity -> logger.debug("createReview: created a new entity: {}/{}", body.getProductId(), body.getReviewId()))
+                .map(mapper::entityToApi);
     }
 
     @Override
     public Mono<Void> deleteReviews(int productId) {
         if(productId < 1){
-            throw new InvalidInputException("Invalid productId: " + productId);
+            throw InvalidInputException.withoutStackTrace("Invalid productId: " + productId);
         }
 
-        return Mono.fromRunnable(() -> internalDeleteReviews(productId))
-                .subscribeOn(jdbcScheduler).then();
+        logger.debug("deleteReviews: deleting reviews for product with productId: {}", productId);
+        return persistence.deleteByProductId(productId)
+                .doOnNext(count -> logger.debug("deleteReviews: deleted {} reviews for product with productId: {}", count, productId))
+                .then();
     }
 
-    private List<Review> internalGetReviews(int productId) {
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
-        List<Review> reviews = mapper.entityListToApiList(entityList);
-        reviews.forEach(r -> r.setServiceAddress(serviceUtil.getServiceAddress()));
-
-        logger.debug("getReview: response size: {}", reviews.size());
+    /**
+     * Creates the reviews with one batch insert, used when CREATE events are consumed in batches.
+     *
+     * @param reviews the reviews to create
+     * @return the positions in reviews of the reviews that could not be created,
+     * i.e. reviews with an invalid productId or a key that already exists
+     */
+    public Flux<Integer> createReviews(List<Review> reviews) {
+        logger.debug("createReviews: creating {} reviews", reviews.size());
+
+        List<Integer> invalidPositions = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<ReviewEntity> entities = new ArrayList<>();
+        for (int i = 0; i < reviews.size(); i++) {
+            if (reviews.get(i).getProductId() < 1) {
+                invalidPositions.add(i);
+            } else {
+                positions.add(i);
+                entities.add(mapper.apiToEntity(reviews.get(i)));
+            }
+        }
 
-        return reviews;
+        return Flux.concat(Flux.fromIterable(invalidPositions), persistence.insertAll(entities).map(positions::get));
     }
 
-    private Review internalCreateReview(Review body) {
-        try{
-            ReviewEntity entity = mapper.apiToEntity(body);
-            ReviewEntity newEntity = repository.save(entity);
-
-            logger.debug("createReview: created a new entity: {}/{}", body.getProductId(), body.getReviewId());
-            return mapper.entityToApi(newEntity);
+    /**
+     * Creates the review or overwrites an existing review with the same key, used for CREATE events
+     * when app.messageProcessor.createMode is "upsert".
+     */
+    public Mono<Review> upsertReview(Review body) {
+        if(body.getProductId() < 1){
+            return Mono.error(InvalidInputException.withoutStackTrace("Invalid productId: " + body.getProductId()));
         }
-        catch (DataIntegrityViolationException exception){
-            throw new InvalidInputException("Duplicate key, Product Id:" + body.getProductId() + ", Review Id:" + body.getReviewId());
+
+        ReviewEntity entity = mapper.apiToEntity(body);
+        return persistence.upsert(entity)
+                .log(logger.getName(), FINE)
+                .then(Mono.fromCallable(() -> mapper.entityToApi(entity)));
+    }
+
+    /**
+     * Creates or overwrites the reviews with one batch, used when CREATE events are consumed in batches
+     * and app.messageProcessor.createMode is "upsert".
+     *
+     * @return the positions in reviews of the reviews with an invalid productId
+     */
+    public Flux<Integer> upsertReviews(List<Review> reviews) {
+        logger.debug("upsertReviews: upserting {} reviews", reviews.size());
+
+        List<Integer> invalidPositions = new ArrayList<>();
+        List<ReviewEntity> entities = new ArrayList<>();
+        for (int i = 0; i < reviews.size(); i++) {
+            if (reviews.get(i).getProductId() < 1) {
+                invalidPositions.add(i);
+            } else {
+                entities.add(mapper.apiToEntity(reviews.get(i)));
+            }
         }
+
+        return persistence.upsertAll(entities)
+                .thenMany(Flux.fromIterable(invalidPositions));
     }
 
-    private void internalDeleteReviews(int productId) {
-        logger.debug("deleteReviews: deleting reviews for product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+    /**
+     * Deletes the reviews of all given products with a single statement, used when DELETE events
+     * are consumed in batches.
+     *
+     * @return the number of deleted reviews
+     */
+    public Mono<Integer> deleteReviews(Collection<Integer> productIds) {
+        logger.debug("deleteReviews: deleting reviews for {} productIds", productIds.size());
+        return persistence.deleteByProductIdIn(productIds);
+    }
+
+    private Review toApi(ReviewEntity entity) {
+        Review review = mapper.entityToApi(entity);
+        review.setServiceAddress(serviceUtil.getServiceAddress());
+        return review;
     }
 }
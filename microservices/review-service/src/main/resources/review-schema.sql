@@ -0,0 +1,28 @@
+CREATE TABLE IF NOT EXISTS reviews (
+    id INT NOT NULL,
+    version INT NOT NULL,
+    product_id INT NOT NULL,
+    review_id INT NOT NULL,
+    author VARCHAR(255),
+    subject VARCHAR(255),
+    content VARCHAR(255),
+    PRIMARY KEY (id),
+    UNIQUE KEY reviews_unique_idx (product_id, review_id)
+);
+
+-- The ids of ReviewEntity, allocated in blocks of 50 by Hibernate and by the R2DBC mode. A new table
+-- starts after the ids already in reviews.
+CREATE TABLE IF NOT EXISTS reviews_seq (
+    next_val BIGINT
+);
+
+INSERT INTO reviews_seq (next_val)
+SELECT next_val FROM (SELECT COALESCE(MAX(id), 0) + 51 AS next_val FROM reviews) AS first_block
+WHERE NOT EXISTS (SELECT * FROM reviews_seq);
+
+CREATE TABLE IF NOT EXISTS processed_events (
+    event_id VARCHAR(255) NOT NULL,
+    processed_at DATETIME(6),
+    PRIMARY KEY (event_id),
+    KEY processed_events_processed_at_idx (processed_at)
+);
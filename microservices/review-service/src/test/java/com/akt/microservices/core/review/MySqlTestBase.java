@@ -19,5 +19,8 @@ public abstract class MySqlTestBase {
         registry.add("spring.datasource.url", database::getJdbcUrl);
         registry.add("spring.datasource.username", database::getUsername);
         registry.add("spring.datasource.password", database::getPassword);
+        registry.add("spring.r2dbc.url", () -> database.getJdbcUrl().replaceFirst("^jdbc:", "r2dbc:"));
+        registry.add("spring.r2dbc.username", database::getUsername);
+        registry.add("spring.r2dbc.password", database::getPassword);
     }
 }
@@ -1,15 +1,28 @@
 package com.akt.microservices.core.review;
 
+import com.akt.microservices.core.review.persistence.JpaReviewPersistence;
 import com.akt.microservices.core.review.persistence.ReviewEntity;
 import com.akt.microservices.core.review.persistence.ReviewRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
 import java.util.List;
 
@@ -18,14 +31,35 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 @Transactional(propagation = NOT_SUPPORTED)
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({JpaReviewPersistence.class, PersistenceTests.JdbcSchedulerConfig.class})
 class PersistenceTests extends MySqlTestBase {
 
+    @TestConfiguration
+    static class JdbcSchedulerConfig {
+
+        @Bean
+        Scheduler jdbcScheduler() {
+            return Schedulers.immediate();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
     @Autowired
     private ReviewRepository repository;
 
+    @Autowired
+    private JpaReviewPersistence persistence;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     private ReviewEntity savedEntity;
 
     @BeforeEach
@@ -74,6 +108,41 @@ class PersistenceTests extends MySqlTestBase {
         assertFalse(repository.existsById(savedEntity.getId()));
     }
 
+    @Test
+    void deleteByProductIdUsesOneStatement() {
+        int reviewCount = 10;
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Loading the reviews and deleting them one by one takes at least N + 1 statements
+        saveReviews(reviewCount);
+        statistics.clear();
+        repository.deleteAll(repository.findByProductId(savedEntity.getProductId()));
+        assertTrue(statistics.getPrepareStatementCount() >= reviewCount + 1);
+
+        // The set-based delete takes a single statement
+        saveReviews(reviewCount);
+        statistics.clear();
+        assertEquals(reviewCount, repository.deleteByProductId(savedEntity.getProductId()));
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void upsert() {
+        StepVerifier.create(persistence.upsert(new ReviewEntity(1, 1, "a", "s", "c"))).verifyComplete();
+        StepVerifier.create(persistence.upsertAll(List.of(new ReviewEntity(1, 2, "a2", "s2", "c2"), new ReviewEntity(1, 2, "a3", "s3", "c3"))))
+                .verifyComplete();
+
+        // The existing review and the review inserted earlier in the batch are updated in place
+        List<ReviewEntity> entityList = repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(1, 0, Pageable.unpaged());
+        assertThat(entityList, hasSize(2));
+        assertEquals(savedEntity.getId(), entityList.get(0).getId());
+        assertEquals(1, entityList.get(0).getVersion());
+        assertEquals("a", entityList.get(0).getAuthor());
+        assertEquals(1, entityList.get(1).getVersion());
+        assertEquals("a3", entityList.get(1).getAuthor());
+    }
+
     @Test
     void duplicateError() {
         assertThrows(DataIntegrityViolationException.class, () -> {
@@ -106,6 +175,13 @@ class PersistenceTests extends MySqlTestBase {
         assertEquals("a101", updatedEntity.getAuthor());
     }
 
+    private void saveReviews(int reviewCount) {
+        repository.deleteAll();
+        for (int reviewId = 1; reviewId <= reviewCount; reviewId++) {
+            repository.save(new ReviewEntity(savedEntity.getProductId(), reviewId, "a", "s", "c"));
+        }
+    }
+
     private void assertEqualsReview(ReviewEntity expectedEntity, ReviewEntity actualEntity) {
         assertEquals(expectedEntity.getId(),        actualEntity.getId());
         assertEquals(expectedEntity.getVersion(),   actualEntity.getVersion());
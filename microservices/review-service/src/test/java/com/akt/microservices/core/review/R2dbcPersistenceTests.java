@@ -0,0 +1,102 @@
+package com.akt.microservices.core.review;
+
+import com.akt.microservices.core.review.persistence.R2dbcReviewPersistence;
+import com.akt.microservices.core.review.persistence.ReviewEntity;
+import com.akt.microservices.core.review.persistence.ReviewPersistence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.cloud.stream.defaultBinder=rabbit"})
+@ActiveProfiles("r2dbc")
+class R2dbcPersistenceTests extends MySqlTestBase {
+
+    @Autowired
+    private ReviewPersistence persistence;
+
+    private ReviewEntity savedEntity;
+
+    @BeforeEach
+    void setupDb() {
+        assertInstanceOf(R2dbcReviewPersistence.class, persistence);
+
+        persistence.deleteByProductId(1).block();
+
+        savedEntity = persistence.save(new ReviewEntity(1, 1, "a1", "s1", "c1")).block();
+    }
+
+    @Test
+    void getByProductId() {
+        StepVerifier.create(persistence.findByProductId(1, null, null))
+                .expectNextMatches(entity -> entity.getId() == savedEntity.getId() && "a1".equals(entity.getAuthor()))
+                .verifyComplete();
+    }
+
+    @Test
+    void getPageByProductId() {
+        persistence.save(new ReviewEntity(1, 2, "a2", "s2", "c2")).block();
+        persistence.save(new ReviewEntity(1, 3, "a3", "s3", "c3")).block();
+
+        StepVerifier.create(persistence.findByProductId(1, 1, 1).map(ReviewEntity::getReviewId))
+                .expectNext(2)
+                .verifyComplete();
+    }
+
+    @Test
+    void getByProductIds() {
+        persistence.save(new ReviewEntity(2, 1, "a", "s", "c")).block();
+
+        List<ReviewEntity> entityList = persistence.findByProductIdIn(List.of(1, 2)).collectList().block();
+        assertEquals(2, entityList.size());
+    }
+
+    @Test
+    void idsAreAllocatedFromTheReviewsSequence() {
+        List<ReviewEntity> entities = IntStream.rangeClosed(2, 61)
+                .mapToObj(reviewId -> new ReviewEntity(1, reviewId, "a", "s", "c"))
+                .toList();
+        StepVerifier.create(persistence.insertAll(entities)).verifyComplete();
+
+        // The 61 reviews span more than one allocated block of ids and none of them is reused
+        List<ReviewEntity> entityList = persistence.findByProductId(1, null, null).collectList().block();
+        assertEquals(61, entityList.stream().map(ReviewEntity::getId).distinct().count());
+    }
+
+    @Test
+    void duplicateError() {
+        StepVerifier.create(persistence.save(new ReviewEntity(1, 1, "a", "s", "c")))
+                .expectError(DataIntegrityViolationException.class)
+                .verify();
+    }
+
+    @Test
+    void upsert() {
+        StepVerifier.create(persistence.upsert(new ReviewEntity(1, 1, "a", "s", "c"))).verifyComplete();
+        StepVerifier.create(persistence.upsertAll(List.of(new ReviewEntity(1, 2, "a2", "s2", "c2"), new ReviewEntity(1, 2, "a3", "s3", "c3"))))
+                .verifyComplete();
+
+        List<ReviewEntity> entityList = persistence.findByProductId(1, null, null).collectList().block();
+        assertEquals(2, entityList.size());
+        assertEquals("a", entityList.get(0).getAuthor());
+        assertEquals(1, entityList.get(0).getVersion());
+        assertEquals("a3", entityList.get(1).getAuthor());
+    }
+
+    @Test
+    void deleteByProductId() {
+        StepVerifier.create(persistence.deleteByProductId(1)).expectNext(1).verifyComplete();
+        StepVerifier.create(persistence.findByProductId(1, null, null)).verifyComplete();
+    }
+}
@@ -0,0 +1,113 @@
+package com.akt.microservices.core.review;
+
+import com.akt.api.core.review.Review;
+import com.akt.api.event.Event;
+import com.akt.microservices.core.review.persistence.ReviewRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static com.akt.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.cloud.stream.defaultBinder=rabbit",
+        "eureka.client.enabled=false",
+        "app.messageProcessor.mode=reactive",
+        "app.messageProcessor.concurrency=4"})
+class ReactiveMessageProcessorTests extends MySqlTestBase {
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @Autowired
+    @Qualifier("messageProcessor")
+    private Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageProcessor;
+
+    @MockitoBean
+    private StreamBridge streamBridge;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll();
+        when(streamBridge.send(anyString(), any())).thenReturn(true);
+    }
+
+    @Test
+    void eventsForTheSameProductKeepTheirOrder() {
+        // Odd products end with a delete, even products with a create of the second version
+        Flux<Message<Event<Integer, Review>>> messages = Flux.range(1, 10)
+                .flatMapIterable(productId -> productId % 2 == 0
+                        ? List.of(createEvent(productId, 1), deleteEvent(productId), createEvent(productId, 2))
+                        : List.of(createEvent(productId, 1), deleteEvent(productId), createEvent(productId, 2), deleteEvent(productId)))
+                .map(event -> MessageBuilder.withPayload(event).build());
+
+        StepVerifier.create(messageProcessor.apply(messages)).verifyComplete();
+
+        assertEquals(5, (long) repository.count());
+        IntStream.rangeClosed(1, 10).filter(productId -> productId % 2 == 0).mapToObj(repository::findByProductId)
+                .forEach(entities -> {
+                    assertEquals(1, entities.size());
+                    assertEquals(2, entities.get(0).getReviewId());
+                });
+    }
+
+    @Test
+    void failedEventsAreDeadLettered() {
+        Flux<Message<Event<Integer, Review>>> messages = Flux.<Event<Integer, Review>>just(createEvent(1, 1), createEvent(1, 1), new Event<>(null, 1, null))
+                .map(event -> MessageBuilder.withPayload(event).build());
+
+        StepVerifier.create(messageProcessor.apply(messages)).verifyComplete();
+
+        assertEquals(1, (long) repository.count());
+        verify(streamBridge, times(2)).send(eq("deadLetters-out-0"), any());
+    }
+
+    @Test
+    void failedKafkaRecordIsRetriedInPlace() {
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        doReturn(false, true).when(streamBridge).send(eq("deadLetters-out-0"), any());
+        Message<Event<Integer, Review>> message = MessageBuilder.withPayload(new Event<Integer, Review>(null, 1, null))
+                .setHeader(KafkaHeaders.OFFSET, 0L)
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+                .build();
+
+        // The first dead-letter send fails, the record is retried instead of being left uncommitted
+        StepVerifier.create(messageProcessor.apply(Flux.just(message))).verifyComplete();
+
+        verify(streamBridge, times(2)).send(eq("deadLetters-out-0"), any());
+        verify(acknowledgment).acknowledge();
+    }
+
+    private Event<Integer, Review> createEvent(int productId, int id) {
+        return new Event<>(CREATE, productId, new Review(productId, id, "a", "s", "c", "SA"));
+    }
+
+    private Event<Integer, Review> deleteEvent(int productId) {
+        return new Event<>(DELETE, productId, null);
+    }
+}
@@ -13,6 +13,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.akt.api.event.Event.Type.CREATE;
 import static com.akt.api.event.Event.Type.DELETE;
@@ -68,6 +70,43 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 				.jsonPath("$[2].reviewId").isEqualTo(3);
 	}
 
+	@Test
+	void getReviewsByProductIds(){
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(2, 1);
+		sendCreateReviewEvent(3, 1);
+
+		getAndVerifyReviewsByProductId("?productIds=1,2", OK)
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	void getReviewsTooManyProductIds(){
+		String productIds = IntStream.rangeClosed(1, 101).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+		getAndVerifyReviewsByProductId("?productIds=" + productIds, UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Too many productIds: 101, at most 100 are allowed");
+	}
+
+	@Test
+	void getReviewsPage(){
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 3);
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].reviewId").isEqualTo(1)
+				.jsonPath("$[1].reviewId").isEqualTo(2);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&afterReviewId=2&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(3);
+	}
+
 	@Test
 	void getReviewsNotFound() {
 		int productId = 213;
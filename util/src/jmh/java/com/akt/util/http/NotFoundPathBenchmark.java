@@ -0,0 +1,86 @@
+package com.akt.util.http;
+
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+
+import com.akt.api.exceptions.NotFoundException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of answering a request for an unknown id: a NotFoundException is thrown from stackDepth
+ * frames down, caught, turned into an HttpErrorInfo and written as JSON. "before" throws an
+ * exception with a stack trace and writes the body with the bean serializer, "after" throws
+ * NotFoundException.withoutStackTrace and writes the body with HttpErrorInfoSerializer.
+ * Reactive pipelines in the services typically put 50 to 150 frames on the stack.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotFoundPathBenchmark {
+
+  @Param({"10", "100"})
+  public int stackDepth;
+
+  private final ObjectMapper mapper = JsonMapper.builder()
+    .findAndAddModules()
+    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+    .build();
+
+  private final ObjectMapper beanSerializerMapper = JsonMapper.builder()
+    .findAndAddModules()
+    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+    .addMixIn(HttpErrorInfo.class, BeanSerializerMixIn.class)
+    .build();
+
+  @Benchmark
+  public byte[] before() throws IOException {
+    try {
+      throwAt(stackDepth, false);
+      return null;
+    } catch (NotFoundException exception) {
+      return beanSerializerMapper.writeValueAsBytes(new HttpErrorInfo(NOT_FOUND, "/product/13", exception.getMessage()));
+    }
+  }
+
+  @Benchmark
+  public byte[] after() throws IOException {
+    try {
+      throwAt(stackDepth, true);
+      return null;
+    } catch (NotFoundException exception) {
+      return mapper.writeValueAsBytes(new HttpErrorInfo(NOT_FOUND, "/product/13", exception.getMessage()));
+    }
+  }
+
+  private static void throwAt(int depth, boolean withoutStackTrace) {
+    if (depth > 0) {
+      throwAt(depth - 1, withoutStackTrace);
+      return;
+    }
+
+    String message = "No product found for productId: 13";
+    throw withoutStackTrace ? NotFoundException.withoutStackTrace(message) : new NotFoundException(message);
+  }
+
+  @JsonSerialize(using = JsonSerializer.None.class)
+  private abstract static class BeanSerializerMixIn {
+  }
+}
@@ -0,0 +1,96 @@
+package com.akt.util.messaging;
+
+import com.akt.api.core.product.Product;
+import com.akt.api.core.recommendation.Recommendation;
+import com.akt.api.core.review.Review;
+import com.akt.api.event.Event;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.akt.api.event.Event.Type.CREATE;
+
+/**
+ * Encode and decode cost of the events sent to the core services, as JSON the way Spring Cloud
+ * Stream writes them by default and as CBOR the way CborMessageConverter writes them. The message
+ * sizes are printed at the start of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventEncodingBenchmark {
+
+  @Param({"product", "recommendation", "review"})
+  public String eventType;
+
+  private final ObjectMapper jsonMapper = JsonMapper.builder()
+    .findAndAddModules()
+    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+    .build();
+  private final ObjectMapper cborMapper = CBORMapper.builder().findAndAddModules().build();
+
+  private Event<Integer, ?> event;
+  private JavaType javaType;
+  private byte[] json;
+  private byte[] cbor;
+
+  @Setup
+  public void setUp() throws IOException {
+    switch (eventType) {
+      case "product" -> {
+        event = new Event<>(CREATE, 1, new Product(1, "Product name 1", 1, null));
+        javaType = jsonMapper.getTypeFactory().constructParametricType(Event.class, Integer.class, Product.class);
+      }
+      case "recommendation" -> {
+        event = new Event<>(CREATE, 1, new Recommendation(1, 1, "Author 1", 1, "Content of recommendation 1", null));
+        javaType = jsonMapper.getTypeFactory().constructParametricType(Event.class, Integer.class, Recommendation.class);
+      }
+      default -> {
+        event = new Event<>(CREATE, 1, new Review(1, 1, "Author 1", "Subject 1", "Content of review 1", null));
+        javaType = jsonMapper.getTypeFactory().constructParametricType(Event.class, Integer.class, Review.class);
+      }
+    }
+
+    json = jsonMapper.writeValueAsBytes(event);
+    cbor = cborMapper.writeValueAsBytes(event);
+    System.out.printf("%n%s event: JSON %d bytes, CBOR %d bytes%n", eventType, json.length, cbor.length);
+  }
+
+  @Benchmark
+  public byte[] encodeJson() throws IOException {
+    return jsonMapper.writeValueAsBytes(event);
+  }
+
+  @Benchmark
+  public byte[] encodeCbor() throws IOException {
+    return cborMapper.writeValueAsBytes(event);
+  }
+
+  @Benchmark
+  public Event<Integer, ?> decodeJson() throws IOException {
+    return jsonMapper.readValue(json, javaType);
+  }
+
+  @Benchmark
+  public Event<Integer, ?> decodeCbor() throws IOException {
+    return cborMapper.readValue(cbor, javaType);
+  }
+}
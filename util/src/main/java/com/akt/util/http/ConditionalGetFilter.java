@@ -0,0 +1,105 @@
+package com.akt.util.http;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Function;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Conditional GETs for responses made of versioned entities. The ETag of a response is derived
+ * from the id and the version of each entity in it, so it changes when any of them is updated,
+ * deleted or recreated.
+ *
+ * A service calls checkNotModified with the ETag before mapping its entities, or passes a list of
+ * entities through unlessNotModified. When the request's If-None-Match matches, the response is a
+ * 304 and the service returns an empty result, any body written for it is dropped.
+ */
+@Component
+public class ConditionalGetFilter implements WebFilter {
+
+  private static final String EXCHANGE_KEY = ConditionalGetFilter.class.getName() + ".exchange";
+
+  /**
+   * An If-None-Match that matches no entity tag. A client without an ETag for a list sends it to
+   * get the list with its ETag, since lists requested without an If-None-Match are streamed
+   * without one.
+   */
+  public static final String NO_ETAG = "\"none\"";
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    ServerWebExchange conditionalExchange = exchange.mutate()
+      .response(new ServerHttpResponseDecorator(exchange.getResponse()) {
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+          if (exchange.isNotModified()) {
+            return Flux.from(body).doOnNext(DataBufferUtils::release).then(setComplete());
+          }
+          return super.writeWith(body);
+        }
+      })
+      .build();
+    return chain.filter(conditionalExchange).contextWrite(ctx -> ctx.put(EXCHANGE_KEY, conditionalExchange));
+  }
+
+  /**
+   * Sets the ETag of the response of the current request and returns whether the request's
+   * If-None-Match matches it. Outside a request, always returns false.
+   */
+  public static Mono<Boolean> checkNotModified(String etag) {
+    return Mono.deferContextual(ctx -> Mono.just(ctx.<ServerWebExchange>getOrEmpty(EXCHANGE_KEY)
+      .map(exchange -> exchange.checkNotModified(etag))
+      .orElse(false)));
+  }
+
+  /**
+   * Returns the entities, or nothing when the request's If-None-Match matches their ETag. The
+   * entities are only collected to compute the ETag when the request has an If-None-Match, other
+   * requests, and calls outside a request, get the entities streamed and no ETag.
+   */
+  public static <E> Flux<E> unlessNotModified(Flux<E> entities, Function<E, Object> id, Function<E, Object> version) {
+    return Flux.deferContextual(ctx -> {
+      boolean conditional = ctx.<ServerWebExchange>getOrEmpty(EXCHANGE_KEY)
+        .map(exchange -> !exchange.getRequest().getHeaders().getIfNoneMatch().isEmpty())
+        .orElse(false);
+      if (!conditional) {
+        return entities;
+      }
+      return entities.collectList()
+        .filterWhen(list -> checkNotModified(entityTag(list, id, version)).map(notModified -> !notModified))
+        .flatMapIterable(list -> list);
+    });
+  }
+
+  /**
+   * Returns the ETag of a response made of the given entities.
+   */
+  public static <E> String entityTag(List<E> entities, Function<E, Object> id, Function<E, Object> version) {
+    MessageDigest digest = sha256();
+    for (E entity : entities) {
+      digest.update((id.apply(entity) + ":" + version.apply(entity) + ";").getBytes(StandardCharsets.UTF_8));
+    }
+    // 128 bits are plenty to tell the versions of a response apart
+    return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
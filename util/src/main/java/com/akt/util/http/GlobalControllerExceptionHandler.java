@@ -11,6 +11,9 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import com.akt.api.exceptions.InvalidInputException;
 import com.akt.api.exceptions.NotFoundException;
+import com.akt.api.exceptions.ServiceUnavailableException;
+
+import java.util.concurrent.TimeoutException;
 
 import static org.springframework.http.HttpStatus.*;
 
@@ -43,6 +46,24 @@ class GlobalControllerExceptionHandler {
     return createHttpErrorInfo(UNPROCESSABLE_ENTITY, request, exception);
   }
 
+  // A downstream call rejected by an open circuit breaker or a full bulkhead
+  @ResponseStatus(SERVICE_UNAVAILABLE)
+  @ExceptionHandler(ServiceUnavailableException.class)
+  public @ResponseBody HttpErrorInfo handleServiceUnavailableException(
+    ServerHttpRequest request, ServiceUnavailableException exception) {
+
+    return createHttpErrorInfo(SERVICE_UNAVAILABLE, request, exception);
+  }
+
+  // A downstream call that missed the deadline of the request
+  @ResponseStatus(GATEWAY_TIMEOUT)
+  @ExceptionHandler(TimeoutException.class)
+  public @ResponseBody HttpErrorInfo handleTimeoutException(
+    ServerHttpRequest request, TimeoutException exception) {
+
+    return createHttpErrorInfo(GATEWAY_TIMEOUT, request, exception);
+  }
+
   private HttpErrorInfo createHttpErrorInfo(
     HttpStatus httpStatus, ServerHttpRequest request, Exception exception) {
 
@@ -1,9 +1,18 @@
 package com.akt.util.http;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.time.Clock;
 import java.time.ZonedDateTime;
 import org.springframework.http.HttpStatus;
 
+/**
+ * The body of error responses. It is written by {@link HttpErrorInfoSerializer} instead of the
+ * generic bean serializer, since error responses for unknown ids can be a large part of the traffic.
+ */
+@JsonSerialize(using = HttpErrorInfoSerializer.class)
 public class HttpErrorInfo {
+  private static final Clock CLOCK = Clock.systemDefaultZone();
+
   private final ZonedDateTime timestamp;
   private final String path;
   private final HttpStatus httpStatus;
@@ -17,7 +26,7 @@ public class HttpErrorInfo {
   }
 
   public HttpErrorInfo(HttpStatus httpStatus, String path, String message) {
-    timestamp = ZonedDateTime.now();
+    timestamp = ZonedDateTime.now(CLOCK);
     this.httpStatus = httpStatus;
     this.path = path;
     this.message = message;
@@ -0,0 +1,46 @@
+package com.akt.util.http;
+
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+
+/**
+ * Writes an {@link HttpErrorInfo} field by field with pre-encoded field names, producing the same
+ * JSON as the bean serializer with the JavaTimeModule: the timestamp as an ISO offset date-time.
+ */
+public class HttpErrorInfoSerializer extends StdSerializer<HttpErrorInfo> {
+
+  private static final SerializedString TIMESTAMP = new SerializedString("timestamp");
+  private static final SerializedString PATH = new SerializedString("path");
+  private static final SerializedString STATUS = new SerializedString("status");
+  private static final SerializedString ERROR = new SerializedString("error");
+  private static final SerializedString MESSAGE = new SerializedString("message");
+
+  public HttpErrorInfoSerializer() {
+    super(HttpErrorInfo.class);
+  }
+
+  @Override
+  public void serialize(HttpErrorInfo info, JsonGenerator gen, SerializerProvider provider) throws IOException {
+    gen.writeStartObject(info);
+    gen.writeFieldName(TIMESTAMP);
+    if (info.getTimestamp() == null) {
+      gen.writeNull();
+    } else {
+      gen.writeString(ISO_OFFSET_DATE_TIME.format(info.getTimestamp()));
+    }
+    gen.writeFieldName(PATH);
+    gen.writeString(info.getPath());
+    gen.writeFieldName(STATUS);
+    gen.writeNumber(info.getStatus());
+    gen.writeFieldName(ERROR);
+    gen.writeString(info.getError());
+    gen.writeFieldName(MESSAGE);
+    gen.writeString(info.getMessage());
+    gen.writeEndObject();
+  }
+}
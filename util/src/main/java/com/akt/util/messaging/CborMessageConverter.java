@@ -0,0 +1,74 @@
+package com.akt.util.messaging;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+
+/**
+ * Converts message payloads to and from CBOR, a binary encoding of the JSON data model. Events
+ * keep their JSON structure but are smaller and faster to parse.
+ *
+ * Used for bindings with contentType application/cbor. Consumers pick the converter from the
+ * contentType header of each message, so producers can switch encoding binding by binding.
+ */
+public class CborMessageConverter extends AbstractMessageConverter {
+
+  public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+  private final ObjectMapper mapper;
+
+  public CborMessageConverter() {
+    this(CBORMapper.builder().findAndAddModules().build());
+  }
+
+  public CborMessageConverter(ObjectMapper mapper) {
+    super(APPLICATION_CBOR);
+    this.mapper = mapper;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return true;
+  }
+
+  @Override
+  protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+    if (!(message.getPayload() instanceof byte[] payload)) {
+      return null;
+    }
+
+    try {
+      return mapper.readValue(payload, getJavaType(targetClass, conversionHint));
+    } catch (IOException e) {
+      throw new MessageConversionException(message, "Could not read CBOR: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+    try {
+      return mapper.writeValueAsBytes(payload);
+    } catch (IOException e) {
+      throw new MessageConversionException("Could not write CBOR: " + e.getMessage(), e);
+    }
+  }
+
+  private JavaType getJavaType(Class<?> targetClass, Object conversionHint) {
+    if (conversionHint instanceof MethodParameter parameter) {
+      return mapper.constructType(GenericTypeResolver.resolveType(parameter.getNestedGenericParameterType(), parameter.getContainingClass()));
+    }
+    if (conversionHint instanceof Type type) {
+      return mapper.constructType(type);
+    }
+    return mapper.constructType(targetClass);
+  }
+}
@@ -0,0 +1,99 @@
+package com.akt.util.messaging;
+
+import com.akt.api.event.Event;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Suppresses events that were already processed, e.g. after a broker redelivery, by their
+ * eventId. The ids of the last cacheSize processed events are kept in memory, and if a
+ * ProcessedEventStore is given it is consulted for ids that are not in the cache. Events
+ * without an eventId, sent by earlier versions of the product-composite service, are never
+ * suppressed.
+ *
+ * Suppressed duplicates are counted by "event.duplicates.suppressed", tagged with the source
+ * that knew the id. Failures of the store are logged and the event is treated as new, so at
+ * worst a duplicate is processed as it would be without deduplication.
+ */
+public class EventDeduplicator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventDeduplicator.class);
+
+  private final Set<String> processedEventIds;
+  private final ProcessedEventStore store;
+
+  private final Counter cacheCounter;
+  private final Counter storeCounter;
+
+  public EventDeduplicator(int cacheSize, ProcessedEventStore store, MeterRegistry meterRegistry) {
+    this.processedEventIds = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > cacheSize;
+      }
+    }));
+    this.store = store;
+
+    this.cacheCounter = Counter.builder("event.duplicates.suppressed")
+      .description("Events skipped since they were already processed")
+      .tag("source", "cache")
+      .register(meterRegistry);
+    this.storeCounter = Counter.builder("event.duplicates.suppressed")
+      .description("Events skipped since they were already processed")
+      .tag("source", "store")
+      .register(meterRegistry);
+  }
+
+  public Mono<Boolean> isDuplicate(Event<?, ?> event) {
+    String eventId = event.getEventId();
+    if (eventId == null) {
+      return Mono.just(false);
+    }
+
+    if (processedEventIds.contains(eventId)) {
+      LOG.debug("Skip the {} event {} since it is already processed", event.getEventType(), eventId);
+      cacheCounter.increment();
+      return Mono.just(true);
+    }
+
+    if (store == null) {
+      return Mono.just(false);
+    }
+    return store.contains(eventId)
+      .doOnNext(found -> {
+        if (found) {
+          LOG.debug("Skip the {} event {} since it is already processed", event.getEventType(), eventId);
+          processedEventIds.add(eventId);
+          storeCounter.increment();
+        }
+      })
+      .onErrorResume(ex -> {
+        LOG.warn("Failed to look up event {} in the processed event store: {}", eventId, ex.toString());
+        return Mono.just(false);
+      });
+  }
+
+  public Mono<Void> markProcessed(Event<?, ?> event) {
+    String eventId = event.getEventId();
+    if (eventId == null) {
+      return Mono.empty();
+    }
+
+    processedEventIds.add(eventId);
+    if (store == null) {
+      return Mono.empty();
+    }
+    return store.add(eventId)
+      .onErrorResume(ex -> {
+        LOG.warn("Failed to add event {} to the processed event store: {}", eventId, ex.toString());
+        return Mono.empty();
+      });
+  }
+}
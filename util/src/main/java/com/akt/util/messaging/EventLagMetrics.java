@@ -0,0 +1,36 @@
+package com.akt.util.messaging;
+
+import com.akt.api.event.Event;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the time from the creation of an event in the product-composite service until a core
+ * service is done with it as the "event.lag" timer, tagged with the event type. The lag includes
+ * the time spent in the outbox, the broker and the consumer, and any clock skew between the hosts.
+ */
+public class EventLagMetrics {
+
+  private final Map<Event.Type, Timer> lagTimers = new EnumMap<>(Event.Type.class);
+
+  public EventLagMetrics(MeterRegistry meterRegistry) {
+    for (Event.Type eventType : Event.Type.values()) {
+      lagTimers.put(eventType, Timer.builder("event.lag")
+        .description("Time from creating an event until it was processed")
+        .tag("eventType", eventType.name())
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .publishPercentileHistogram()
+        .register(meterRegistry));
+    }
+  }
+
+  public void record(Event<?, ?> event) {
+    Timer lagTimer = event.getEventType() == null ? null : lagTimers.get(event.getEventType());
+    if (lagTimer != null && event.getEventCreatedAt() > 0) {
+      lagTimer.record(System.currentTimeMillis() - event.getEventCreatedAt(), TimeUnit.MILLISECONDS);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.akt.util.messaging;
+
+import com.akt.api.event.Event;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a batch of events into runs of consecutive events of the same type. Each run can be
+ * written with one bulk insert or delete, and writing the runs one after the other keeps creates
+ * and deletes in the order of the batch.
+ */
+public final class EventRuns {
+
+  private EventRuns() {
+  }
+
+  /**
+   * Returns the runs of the events in batch order, as views of the given list.
+   */
+  public static <E extends Event<?, ?>> List<List<E>> split(List<E> events) {
+    List<List<E>> runs = new ArrayList<>();
+    int start = 0;
+    while (start < events.size()) {
+      Event.Type eventType = events.get(start).getEventType();
+      int end = start + 1;
+      while (end < events.size() && events.get(end).getEventType() == eventType) {
+        end++;
+      }
+      runs.add(events.subList(start, end));
+      start = end;
+    }
+    return runs;
+  }
+}
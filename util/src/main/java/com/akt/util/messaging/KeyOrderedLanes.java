@@ -0,0 +1,211 @@
+package com.akt.util.messaging;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+/**
+ * Processes messages in a fixed number of single-threaded lanes chosen by the message key, so
+ * messages with the same key are processed in order while different keys are processed in parallel.
+ *
+ * Acknowledgements are tracked per Kafka partition or RabbitMQ channel in the order the messages
+ * were received. When a message is done, the run of done messages at the head of its partition is
+ * acknowledged up to its last message, so nothing is acknowledged while an earlier message is still
+ * being processed.
+ *
+ * A RabbitMQ message whose handler fails is requeued and no longer holds back the acknowledgements
+ * of its channel. A Kafka offset can't be skipped, so the later messages of a partition with a failed
+ * message are not processed until the failed message is delivered again. The consumer may only be
+ * used on its own thread, so the next dispatch of the partition seeks it back to the failed offset,
+ * and the messages it already fetched beyond that offset are dropped until the failed one arrives.
+ *
+ * At most maxInFlight messages are dispatched but not yet done, dispatch blocks the caller beyond that.
+ */
+public class KeyOrderedLanes implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeyOrderedLanes.class);
+
+  private static final String DEFAULT_PARTITION = "default";
+
+  private final ExecutorService[] lanes;
+  private final Semaphore inFlight;
+  private final ConcurrentMap<Object, PartitionTracker> partitions = new ConcurrentHashMap<>();
+
+  public KeyOrderedLanes(String name, int laneCount, int maxInFlight) {
+    this.lanes = new ExecutorService[laneCount];
+    for (int i = 0; i < laneCount; i++) {
+      String threadName = name + "-lane-" + i;
+      lanes[i] = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, threadName));
+    }
+    this.inFlight = new Semaphore(maxInFlight);
+  }
+
+  public void dispatch(Message<?> message, Object key, Runnable handler) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a free lane", e);
+    }
+
+    PartitionTracker partition = partitions.computeIfAbsent(partitionOf(message), p -> new PartitionTracker());
+    // Called on the listener thread, which is the consumer thread for Kafka
+    TrackedMessage tracked = partition.track(message);
+    if (tracked == null) {
+      LOG.debug("Skipping message with key {}, an earlier message of its partition failed", key);
+      inFlight.release();
+      return;
+    }
+
+    try {
+      lanes[Math.floorMod(Objects.hashCode(key), lanes.length)].execute(() -> {
+        try {
+          handler.run();
+          partition.complete(tracked);
+        } catch (RuntimeException e) {
+          LOG.error("Failed to process message with key {}", key, e);
+          partition.fail(tracked);
+        } finally {
+          inFlight.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      LOG.warn("Lanes are closed, message with key {} is not processed", key);
+      partition.fail(tracked);
+      inFlight.release();
+    }
+  }
+
+  @Override
+  public void close() {
+    for (ExecutorService lane : lanes) {
+      lane.shutdown();
+    }
+    try {
+      for (ExecutorService lane : lanes) {
+        if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+          LOG.warn("Lane did not finish its messages in time, they are left unacknowledged");
+          lane.shutdownNow();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Object partitionOf(Message<?> message) {
+    MessageHeaders headers = message.getHeaders();
+
+    Integer kafkaPartition = headers.get(KafkaHeaders.RECEIVED_PARTITION, Integer.class);
+    if (kafkaPartition != null) {
+      return headers.get(KafkaHeaders.RECEIVED_TOPIC) + "-" + kafkaPartition;
+    }
+
+    Object rabbitChannel = headers.get(AmqpHeaders.CHANNEL);
+    return rabbitChannel != null ? rabbitChannel : DEFAULT_PARTITION;
+  }
+
+  private static Long kafkaOffset(Message<?> message) {
+    return message.getHeaders().get(KafkaHeaders.OFFSET, Long.class);
+  }
+
+  private static class TrackedMessage {
+    private final Message<?> message;
+    private boolean done;
+    private boolean requeued;
+
+    TrackedMessage(Message<?> message) {
+      this.message = message;
+    }
+  }
+
+  private static class PartitionTracker {
+    private final Deque<TrackedMessage> pending = new ArrayDeque<>();
+    private Long failedOffset;
+    private boolean seekPending;
+
+    /**
+     * Returns null for a message that comes after a failed Kafka offset of the partition, and seeks
+     * the partition back to the failed offset if that wasn't done yet.
+     */
+    synchronized TrackedMessage track(Message<?> message) {
+      if (failedOffset != null) {
+        Long offset = kafkaOffset(message);
+        if (offset != null && offset > failedOffset) {
+          if (seekPending) {
+            seekToFailedOffset(message);
+          }
+          return null;
+        }
+        LOG.info("Failed offset {} is delivered again, resuming its partition", failedOffset);
+        failedOffset = null;
+        pending.clear();
+      }
+
+      TrackedMessage tracked = new TrackedMessage(message);
+      pending.addLast(tracked);
+      return tracked;
+    }
+
+    synchronized void complete(TrackedMessage tracked) {
+      tracked.done = true;
+
+      TrackedMessage lastDone = null;
+      while (!pending.isEmpty() && pending.peekFirst().done) {
+        TrackedMessage first = pending.pollFirst();
+        if (!first.requeued) {
+          lastDone = first;
+        }
+      }
+      if (lastDone != null) {
+        MessageAcknowledgements.acknowledgeUpTo(lastDone.message);
+      }
+    }
+
+    synchronized void fail(TrackedMessage tracked) {
+      Long offset = kafkaOffset(tracked.message);
+      if (offset != null) {
+        // Committing a later offset would skip the failed one, so the partition waits for its redelivery.
+        // Earlier messages are still acknowledged when they are done.
+        failedOffset = failedOffset == null ? offset : Math.min(failedOffset, offset);
+        seekPending = true;
+        pending.removeIf(pendingMessage -> kafkaOffset(pendingMessage.message) >= failedOffset);
+        return;
+      }
+
+      MessageAcknowledgements.requeue(tracked.message);
+      tracked.requeued = true;
+      complete(tracked);
+    }
+
+    private void seekToFailedOffset(Message<?> message) {
+      seekPending = false;
+      MessageHeaders headers = message.getHeaders();
+      Consumer<?, ?> consumer = headers.get(KafkaHeaders.CONSUMER, Consumer.class);
+      if (consumer == null) {
+        LOG.warn("No consumer to seek back to failed offset {}, it is delivered again after the next rebalance", failedOffset);
+        return;
+      }
+
+      TopicPartition topicPartition = new TopicPartition(headers.get(KafkaHeaders.RECEIVED_TOPIC, String.class),
+        headers.get(KafkaHeaders.RECEIVED_PARTITION, Integer.class));
+      LOG.info("Seeking {} back to failed offset {}", topicPartition, failedOffset);
+      consumer.seek(topicPartition, failedOffset);
+    }
+  }
+}
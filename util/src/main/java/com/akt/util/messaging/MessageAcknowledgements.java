@@ -0,0 +1,72 @@
+package com.akt.util.messaging;
+
+import com.rabbitmq.client.Channel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+
+/**
+ * Manual acknowledgement of messages received from the Kafka or the RabbitMQ binder. Messages
+ * without an acknowledgement header, e.g. from the test binder, are ignored.
+ */
+public final class MessageAcknowledgements {
+
+  private MessageAcknowledgements() {
+  }
+
+  public static void acknowledge(Message<?> message) {
+    acknowledge(message, false);
+  }
+
+  /**
+   * Acknowledges the message together with all earlier messages of its Kafka partition or
+   * RabbitMQ channel.
+   */
+  public static void acknowledgeUpTo(Message<?> message) {
+    acknowledge(message, true);
+  }
+
+  /**
+   * Returns whether the message is a Kafka record, which can't be requeued with {@link #requeue}.
+   */
+  public static boolean isKafkaRecord(Message<?> message) {
+    return message.getHeaders().containsKey(KafkaHeaders.OFFSET);
+  }
+
+  /**
+   * Negatively acknowledges a message received from RabbitMQ, so that it is requeued and delivered
+   * again. Kafka records are left alone, they can only be negatively acknowledged on the consumer
+   * thread and are delivered again once their partition is sought back to the last committed offset.
+   */
+  public static void requeue(Message<?> message) {
+    Channel channel = message.getHeaders().get(AmqpHeaders.CHANNEL, Channel.class);
+    Long deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+    if (channel != null && deliveryTag != null) {
+      try {
+        channel.basicNack(deliveryTag, false, true);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private static void acknowledge(Message<?> message, boolean multiple) {
+    Acknowledgment acknowledgment = message.getHeaders().get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+    if (acknowledgment != null) {
+      acknowledgment.acknowledge();
+    }
+
+    Channel channel = message.getHeaders().get(AmqpHeaders.CHANNEL, Channel.class);
+    Long deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+    if (channel != null && deliveryTag != null) {
+      try {
+        channel.basicAck(deliveryTag, multiple);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
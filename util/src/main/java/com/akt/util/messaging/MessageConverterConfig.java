@@ -0,0 +1,19 @@
+package com.akt.util.messaging;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+
+/**
+ * Registers the CBOR converter with Spring Cloud Stream, next to its default JSON converter.
+ * The content type is selected per binding, e.g.
+ * spring.cloud.stream.bindings.products-out-0.contentType: application/cbor
+ */
+@Configuration
+public class MessageConverterConfig {
+
+  @Bean
+  public MessageConverter cborMessageConverter() {
+    return new CborMessageConverter();
+  }
+}
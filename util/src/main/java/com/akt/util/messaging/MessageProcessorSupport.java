@@ -0,0 +1,287 @@
+package com.akt.util.messaging;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static com.akt.api.event.Event.Type.DELETE;
+
+import com.akt.api.event.Event;
+import com.akt.api.exceptions.EventProcessingException;
+import com.akt.api.exceptions.InvalidInputException;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.stream.config.ListenerContainerCustomizer;
+import org.springframework.cloud.stream.function.StreamOperations;
+import org.springframework.kafka.listener.AbstractMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+/**
+ * Stores the CREATE and DELETE events of one entity type of a core service, keyed by productId, in
+ * the processing mode selected by app.messageProcessor.mode:
+ *
+ * - "single" consumes one event at a time and lets a failure propagate to the binder.
+ * - "batch" consumes lists of events. Each run of events of the same type, see EventRuns, is
+ *   written with one bulk insert or delete, and events that fail on their own are sent to the
+ *   dead-letter queue one by one while the rest of the batch is acknowledged.
+ * - "reactive" spreads the messages of a reactive stream over app.messageProcessor.concurrency
+ *   lanes by key, and each lane stores its events one at a time. At most
+ *   app.messageProcessor.maxInFlight messages are requested ahead of the lanes.
+ * - "lanes" hands each message from the listener thread to a KeyOrderedLanes lane and takes the
+ *   next one, so one partition is stored by all lanes at once.
+ *
+ * In every mode events for the same product keep their order, events that were already processed
+ * are skipped, see EventDeduplicator, and the lag of each stored event is recorded, see
+ * EventLagMetrics. In the reactive and lanes modes a message is acknowledged only once it is
+ * stored or sent to the dead-letter queue, transient failures are retried first.
+ *
+ * A subclass is the configuration of a service. It declares the messageProcessor bean of each mode
+ * with its entity type, so the binder can tell the payload type, and implements the store operations.
+ */
+public abstract class MessageProcessorSupport<T> {
+
+  protected static final String MODE_PROPERTY = "app.messageProcessor.mode";
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorSupport.class);
+
+  private static final String DEAD_LETTER_BINDING = "deadLetters-out-0";
+
+  private static final Retry RETRY = Retry.backoff(2, Duration.ofMillis(500))
+    .maxBackoff(Duration.ofSeconds(1))
+    .filter(ex -> !(ex instanceof InvalidInputException || ex instanceof EventProcessingException));
+
+  // A Kafka record can't be requeued, so it is retried in place until it is stored or dead-lettered
+  private static final RetryBackoffSpec KAFKA_RETRY = Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+    .maxBackoff(Duration.ofSeconds(30));
+
+  private final String entityName;
+  private final StreamOperations streamOperations;
+  private final int concurrency;
+  private final int maxInFlight;
+  private final boolean upsertOnCreate;
+  private final EventLagMetrics eventLag;
+  private final EventDeduplicator deduplicator;
+
+  /**
+   * @param entityName the plural name of the entities in log messages, e.g. "products"
+   * @param createMode "upsert" overwrites an existing entity on CREATE, so that resent events are stored
+   *                   without a duplicate key exception, anything else inserts and fails if it exists
+   */
+  protected MessageProcessorSupport(String entityName, StreamOperations streamOperations, MeterRegistry meterRegistry,
+                                    int concurrency, int maxInFlight, String createMode, int dedupCacheSize,
+                                    ProcessedEventStore processedEventStore) {
+    this.entityName = entityName;
+    this.streamOperations = streamOperations;
+    this.concurrency = concurrency;
+    this.maxInFlight = maxInFlight;
+    this.upsertOnCreate = "upsert".equals(createMode);
+    LOG.info("CREATE events of {} are stored with createMode: {}", entityName, upsertOnCreate ? "upsert" : "insert");
+    this.eventLag = new EventLagMetrics(meterRegistry);
+    this.deduplicator = new EventDeduplicator(dedupCacheSize, processedEventStore, meterRegistry);
+  }
+
+  /**
+   * Inserts the entity, or overwrites an existing one if upsert is set.
+   */
+  protected abstract Mono<?> create(T entity, boolean upsert);
+
+  protected abstract Mono<?> delete(int productId);
+
+  /**
+   * Inserts the entities, or overwrites existing ones if upsert is set, and returns the positions of
+   * the entities that could not be stored.
+   */
+  protected abstract Flux<Integer> createAll(List<T> entities, boolean upsert);
+
+  /**
+   * Deletes the entities of the products and returns how many were deleted.
+   */
+  protected abstract Mono<? extends Number> deleteAll(List<Integer> productIds);
+
+  /**
+   * Describes the entity in log and dead-letter messages, e.g. "review with ID: 1/2".
+   */
+  protected abstract String describe(T entity);
+
+  protected Consumer<Event<Integer, T>> singleProcessor() {
+    return event -> {
+      LOG.info("Processing the {} message created at {}", event.getEventType(), Instant.ofEpochMilli(event.getEventCreatedAt()));
+
+      if (Boolean.TRUE.equals(deduplicator.isDuplicate(event).block())) {
+        return;
+      }
+
+      if (event.getEventType() == CREATE) {
+        LOG.info("Creating {}", describe(event.getData()));
+        create(event.getData(), upsertOnCreate).block();
+
+      } else if (event.getEventType() == DELETE) {
+        LOG.info("Deleting {} with productId: {}", entityName, event.getKey());
+        delete(event.getKey()).block();
+
+      } else {
+        String errorMessage = incorrectEventType(event.getEventType());
+        LOG.warn(errorMessage);
+        throw new EventProcessingException(errorMessage);
+      }
+
+      deduplicator.markProcessed(event).block();
+      eventLag.record(event);
+      LOG.info("Processing done - {} message created at {}", event.getEventType(), Instant.ofEpochMilli(event.getEventCreatedAt()));
+    };
+  }
+
+  protected Consumer<List<Event<Integer, T>>> batchProcessor() {
+    return events -> {
+      LOG.info("Processing a batch of {} messages", events.size());
+
+      List<Event<Integer, T>> newEvents = events.stream()
+        .filter(event -> !Boolean.TRUE.equals(deduplicator.isDuplicate(event).block()))
+        .toList();
+      for (List<Event<Integer, T>> run : EventRuns.split(newEvents)) {
+        Set<Event<Integer, T>> deadLettered = Collections.newSetFromMap(new IdentityHashMap<>());
+        deadLettered.addAll(processEvents(run.get(0).getEventType(), run));
+        run.stream()
+          .filter(event -> !deadLettered.contains(event))
+          .forEach(event -> deduplicator.markProcessed(event).block());
+        run.forEach(eventLag::record);
+      }
+
+      LOG.info("Processing done - batch of {} messages", events.size());
+    };
+  }
+
+  protected Function<Flux<Message<Event<Integer, T>>>, Mono<Void>> reactiveProcessor() {
+    LOG.info("Processing messages reactively in {} lanes", concurrency);
+
+    return messages -> messages
+      .limitRate(maxInFlight)
+      .groupBy(message -> Math.floorMod(Objects.hashCode(message.getPayload().getKey()), concurrency), maxInFlight)
+      .flatMap(lane -> lane.concatMap(this::processMessage), concurrency)
+      .then();
+  }
+
+  /**
+   * Lets the Kafka binder of the reactive mode commit offsets acknowledged out of order, only up to
+   * the first offset that is still being processed.
+   */
+  protected static ListenerContainerCustomizer<AbstractMessageListenerContainer<?, ?>> asyncAcks() {
+    return (container, destinationName, group) -> container.getContainerProperties().setAsyncAcks(true);
+  }
+
+  protected Consumer<Message<Event<Integer, T>>> lanesProcessor(KeyOrderedLanes lanes) {
+    return message -> lanes.dispatch(message, message.getPayload().getKey(),
+      () -> storeOrDeadLetter(message.getPayload()).block());
+  }
+
+  protected KeyOrderedLanes createLanes() {
+    LOG.info("Processing messages in {} lanes with at most {} messages in flight", concurrency, maxInFlight);
+    return new KeyOrderedLanes("messageProcessor", concurrency, maxInFlight);
+  }
+
+  /**
+   * Stores the event of the message and acknowledges it. If neither storing nor dead-lettering the event
+   * succeeds, a RabbitMQ message is requeued. A Kafka record can't be negatively acknowledged with
+   * out-of-order commits, so it is retried in place with a backoff, holding back only its own lane.
+   */
+  private Mono<Void> processMessage(Message<Event<Integer, T>> message) {
+    Event<Integer, T> event = message.getPayload();
+
+    Mono<Void> store = storeOrDeadLetter(event);
+    if (MessageAcknowledgements.isKafkaRecord(message)) {
+      store = store.retryWhen(KAFKA_RETRY.doBeforeRetry(signal -> LOG.warn("Failed to process the {} message with key {}, retrying it",
+        event.getEventType(), event.getKey(), signal.failure())));
+    }
+
+    return store
+      .then(Mono.fromRunnable(() -> MessageAcknowledgements.acknowledge(message)))
+      .onErrorResume(ex -> {
+        LOG.error("Failed to process the {} message with key {}, it is requeued", event.getEventType(), event.getKey(), ex);
+        return Mono.fromRunnable(() -> MessageAcknowledgements.requeue(message));
+      })
+      .onErrorResume(ex -> {
+        LOG.error("Failed to requeue the {} message with key {}", event.getEventType(), event.getKey(), ex);
+        return Mono.empty();
+      })
+      .then();
+  }
+
+  /**
+   * Stores the event, retrying transient failures, and sends it to the dead-letter queue if it still fails.
+   */
+  private Mono<Void> storeOrDeadLetter(Event<Integer, T> event) {
+    return Mono.defer(() -> deduplicator.isDuplicate(event))
+      .flatMap(duplicate -> duplicate ? Mono.<Void>empty() : Mono.defer(() -> processEvent(event))
+        .retryWhen(RETRY)
+        .then(Mono.defer(() -> deduplicator.markProcessed(event)))
+        .onErrorResume(ex -> Mono.fromRunnable(() -> sendToDeadLetterQueue(event, ex.getMessage())))
+        .doOnSuccess(ignored -> eventLag.record(event)));
+  }
+
+  private Mono<Void> processEvent(Event<Integer, T> event) {
+    if (event.getEventType() == CREATE) {
+      LOG.debug("Creating {}", describe(event.getData()));
+      return create(event.getData(), upsertOnCreate).then();
+
+    } else if (event.getEventType() == DELETE) {
+      LOG.debug("Deleting {} with productId: {}", entityName, event.getKey());
+      return delete(event.getKey()).then();
+
+    } else {
+      return Mono.error(new EventProcessingException(incorrectEventType(event.getEventType())));
+    }
+  }
+
+  /**
+   * Stores a run of events of the same type and returns the events that were sent to the dead-letter queue.
+   */
+  private List<Event<Integer, T>> processEvents(Event.Type eventType, List<Event<Integer, T>> events) {
+    if (eventType == CREATE) {
+      List<T> entities = events.stream().map(Event::getData).toList();
+      LOG.info("Creating {} {}", entities.size(), entityName);
+      return createAll(entities, upsertOnCreate)
+        .doOnNext(position -> sendToDeadLetterQueue(events.get(position), "Failed to create " + describe(entities.get(position))))
+        .map(events::get)
+        .collectList()
+        .block();
+
+    } else if (eventType == DELETE) {
+      List<Integer> productIds = events.stream().map(Event::getKey).toList();
+      LOG.info("Deleting {} of {} productIds", entityName, productIds.size());
+      Number deletedCount = deleteAll(productIds).block();
+      LOG.info("Deleted {} {}", deletedCount, entityName);
+      return List.of();
+
+    } else {
+      events.forEach(event -> sendToDeadLetterQueue(event, incorrectEventType(eventType)));
+      return events;
+    }
+  }
+
+  private void sendToDeadLetterQueue(Event<Integer, T> event, String errorMessage) {
+    LOG.warn("Sending the {} message with key {} to the dead-letter queue: {}", event.getEventType(), event.getKey(), errorMessage);
+
+    Message<Event<Integer, T>> message = MessageBuilder.withPayload(event)
+      .setHeader("x-exception-message", errorMessage)
+      .build();
+    if (!streamOperations.send(DEAD_LETTER_BINDING, message)) {
+      throw new EventProcessingException("Failed to send the message with key " + event.getKey() + " to the dead-letter queue");
+    }
+  }
+
+  private static String incorrectEventType(Event.Type eventType) {
+    return "Incorrect event type: " + eventType + ". Expected a CREATE or DELETE event";
+  }
+}
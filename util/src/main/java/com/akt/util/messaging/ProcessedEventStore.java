@@ -0,0 +1,16 @@
+package com.akt.util.messaging;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Persistent record of the ids of processed events, consulted by EventDeduplicator when an id
+ * is not in its in-memory cache, e.g. after a restart. Ids are kept for at least RETENTION.
+ */
+public interface ProcessedEventStore {
+
+  String RETENTION = "7d";
+
+  Mono<Boolean> contains(String eventId);
+
+  Mono<Void> add(String eventId);
+}
@@ -0,0 +1,100 @@
+package com.akt.util.http;
+
+import static com.akt.util.http.ConditionalGetFilter.NO_ETAG;
+import static com.akt.util.http.ConditionalGetFilter.checkNotModified;
+import static com.akt.util.http.ConditionalGetFilter.entityTag;
+import static com.akt.util.http.ConditionalGetFilter.unlessNotModified;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class ConditionalGetFilterTests {
+
+  private static final List<Entity> ENTITIES = List.of(new Entity("a", 0), new Entity("b", 3));
+  private static final String ETAG = entityTag(ENTITIES, Entity::id, Entity::version);
+
+  private final ConditionalGetFilter filter = new ConditionalGetFilter();
+
+  @Test
+  void matchingRequestGetsNotModifiedWithoutBody() {
+    MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").ifNoneMatch(ETAG));
+
+    filter.filter(exchange, this::writeBodyUnlessNotModified).block();
+
+    assertEquals(HttpStatus.NOT_MODIFIED, exchange.getResponse().getStatusCode());
+    assertEquals(ETAG, exchange.getResponse().getHeaders().getETag());
+    assertEquals("", exchange.getResponse().getBodyAsString().block());
+  }
+
+  @Test
+  void otherRequestGetsBodyAndETag() {
+    MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").ifNoneMatch("\"other\""));
+
+    filter.filter(exchange, this::writeBodyUnlessNotModified).block();
+
+    assertNotEquals(HttpStatus.NOT_MODIFIED, exchange.getResponse().getStatusCode());
+    assertEquals(ETAG, exchange.getResponse().getHeaders().getETag());
+    assertEquals("body", exchange.getResponse().getBodyAsString().block());
+  }
+
+  @Test
+  void unconditionalListIsStreamedWithoutETag() {
+    MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/"));
+
+    filter.filter(exchange, this::writeListUnlessNotModified).block();
+
+    assertNull(exchange.getResponse().getHeaders().getETag());
+    assertEquals("ab", exchange.getResponse().getBodyAsString().block());
+  }
+
+  @Test
+  void conditionalListGetsETagOrNotModified() {
+    MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").ifNoneMatch(NO_ETAG));
+    filter.filter(exchange, this::writeListUnlessNotModified).block();
+    assertEquals(ETAG, exchange.getResponse().getHeaders().getETag());
+    assertEquals("ab", exchange.getResponse().getBodyAsString().block());
+
+    exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/").ifNoneMatch(ETAG));
+    filter.filter(exchange, this::writeListUnlessNotModified).block();
+    assertEquals(HttpStatus.NOT_MODIFIED, exchange.getResponse().getStatusCode());
+    assertEquals("", exchange.getResponse().getBodyAsString().block());
+  }
+
+  @Test
+  void checkOutsideRequestIsNeverNotModified() {
+    assertFalse(checkNotModified(ETAG).block());
+  }
+
+  @Test
+  void entityTagChangesWithAnyVersionOrId() {
+    assertNotEquals(ETAG, entityTag(List.of(new Entity("a", 0), new Entity("b", 4)), Entity::id, Entity::version));
+    assertNotEquals(ETAG, entityTag(List.of(new Entity("a", 0), new Entity("c", 3)), Entity::id, Entity::version));
+    assertNotEquals(ETAG, entityTag(List.of(new Entity("a", 0)), Entity::id, Entity::version));
+    assertEquals(ETAG, entityTag(List.copyOf(ENTITIES), Entity::id, Entity::version));
+  }
+
+  // Writes a body even when not modified, like a JSON array written for an empty Flux
+  private Mono<Void> writeBodyUnlessNotModified(ServerWebExchange exchange) {
+    return checkNotModified(ETAG).flatMap(notModified -> exchange.getResponse().writeWith(Mono.just(
+      exchange.getResponse().bufferFactory().wrap((notModified ? "[]" : "body").getBytes(StandardCharsets.UTF_8)))));
+  }
+
+  private Mono<Void> writeListUnlessNotModified(ServerWebExchange exchange) {
+    return exchange.getResponse().writeWith(unlessNotModified(Flux.fromIterable(ENTITIES), Entity::id, Entity::version)
+      .map(entity -> exchange.getResponse().bufferFactory().wrap(entity.id().toString().getBytes(StandardCharsets.UTF_8))));
+  }
+
+  private record Entity(Object id, Object version) {
+  }
+}
@@ -0,0 +1,49 @@
+package com.akt.util.http;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+
+import com.akt.api.exceptions.NotFoundException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.time.ZonedDateTime;
+import org.junit.jupiter.api.Test;
+
+class HttpErrorInfoTests {
+
+  // Configured like the ObjectMapper of Spring Boot, which the services use to read error responses
+  private final ObjectMapper mapper = JsonMapper.builder()
+    .findAndAddModules()
+    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+    .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+    .build();
+
+  @Test
+  void errorInfoIsWrittenAsBefore() throws Exception {
+    HttpErrorInfo info = new HttpErrorInfo(NOT_FOUND, "/product/13", "No product found for productId: 13");
+
+    JsonNode json = mapper.readTree(mapper.writeValueAsString(info));
+
+    assertEquals(5, json.size());
+    assertEquals("/product/13", json.get("path").asText());
+    assertEquals(404, json.get("status").asInt());
+    assertEquals("Not Found", json.get("error").asText());
+    assertEquals("No product found for productId: 13", json.get("message").asText());
+    assertEquals(info.getTimestamp().toInstant(), ZonedDateTime.parse(json.get("timestamp").asText()).toInstant());
+
+    HttpErrorInfo received = mapper.readValue(mapper.writeValueAsString(info), HttpErrorInfo.class);
+    assertEquals(info.getMessage(), received.getMessage());
+    assertEquals(info.getTimestamp().toInstant(), received.getTimestamp().toInstant());
+  }
+
+  @Test
+  void exceptionWithoutStackTrace() {
+    NotFoundException exception = NotFoundException.withoutStackTrace("No product found for productId: 13");
+
+    assertEquals("No product found for productId: 13", exception.getMessage());
+    assertEquals(0, exception.getStackTrace().length);
+  }
+}
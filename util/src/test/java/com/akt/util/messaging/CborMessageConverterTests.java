@@ -0,0 +1,47 @@
+package com.akt.util.messaging;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.akt.api.core.product.Product;
+import com.akt.api.event.Event;
+import java.lang.reflect.Type;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+
+class CborMessageConverterTests {
+
+  private final CborMessageConverter converter = new CborMessageConverter();
+
+  @Test
+  void eventIsConvertedToAndFromCbor() {
+    Event<Integer, Product> event = new Event<>(CREATE, 1, new Product(1, "name", 2, null));
+
+    Message<?> message = converter.toMessage(event,
+      new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, CborMessageConverter.APPLICATION_CBOR)));
+    Type eventType = new ParameterizedTypeReference<Event<Integer, Product>>() { }.getType();
+
+    @SuppressWarnings("unchecked")
+    Event<Integer, Product> received = (Event<Integer, Product>) converter.fromMessage(message, Event.class, eventType);
+
+    assertEquals(CREATE, received.getEventType());
+    assertEquals(1, received.getKey());
+    assertEquals("name", received.getData().getName());
+    assertEquals(2, received.getData().getWeight());
+    assertEquals(event.getEventCreatedAt(), received.getEventCreatedAt());
+  }
+
+  @Test
+  void jsonMessageIsNotConverted() {
+    Message<byte[]> message = MessageBuilder.withPayload("{}".getBytes())
+      .setHeader(MessageHeaders.CONTENT_TYPE, "application/json")
+      .build();
+
+    assertNull(converter.fromMessage(message, Event.class));
+  }
+}
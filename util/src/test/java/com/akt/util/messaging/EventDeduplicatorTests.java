@@ -0,0 +1,110 @@
+package com.akt.util.messaging;
+
+import static com.akt.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.akt.api.event.Event;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+class EventDeduplicatorTests {
+
+  private MeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @Test
+  void processedEventIsSuppressedUntilEvicted() {
+    EventDeduplicator deduplicator = new EventDeduplicator(2, null, meterRegistry);
+    Event<Integer, Object> first = new Event<>(DELETE, 1, null);
+
+    assertFalse(deduplicator.isDuplicate(first).block());
+    deduplicator.markProcessed(first).block();
+    assertTrue(deduplicator.isDuplicate(first).block());
+
+    deduplicator.markProcessed(new Event<>(DELETE, 2, null)).block();
+    deduplicator.markProcessed(new Event<>(DELETE, 3, null)).block();
+    assertFalse(deduplicator.isDuplicate(first).block());
+
+    assertEquals(1.0, count("cache"));
+  }
+
+  @Test
+  void eventWithoutIdIsNeverSuppressed() {
+    EventDeduplicator deduplicator = new EventDeduplicator(10, null, meterRegistry);
+    Event<Integer, Object> event = new Event<>();
+
+    deduplicator.markProcessed(event).block();
+
+    assertFalse(deduplicator.isDuplicate(event).block());
+  }
+
+  @Test
+  void eventIsLookedUpInTheStore() {
+    InMemoryStore store = new InMemoryStore();
+    Event<Integer, Object> event = new Event<>(DELETE, 1, null);
+    new EventDeduplicator(10, store, meterRegistry).markProcessed(event).block();
+
+    // A new deduplicator, e.g. after a restart, only knows the event from the store
+    EventDeduplicator deduplicator = new EventDeduplicator(10, store, meterRegistry);
+
+    assertTrue(deduplicator.isDuplicate(event).block());
+    assertTrue(deduplicator.isDuplicate(event).block());
+    assertEquals(1, store.lookups);
+    assertEquals(1.0, count("store"));
+    assertEquals(1.0, count("cache"));
+  }
+
+  @Test
+  void storeFailureTreatsEventAsNew() {
+    ProcessedEventStore failingStore = new ProcessedEventStore() {
+      @Override
+      public Mono<Boolean> contains(String eventId) {
+        return Mono.error(new IllegalStateException("unavailable"));
+      }
+
+      @Override
+      public Mono<Void> add(String eventId) {
+        return Mono.error(new IllegalStateException("unavailable"));
+      }
+    };
+    EventDeduplicator deduplicator = new EventDeduplicator(10, failingStore, meterRegistry);
+    Event<Integer, Object> event = new Event<>(DELETE, 1, null);
+
+    assertFalse(deduplicator.isDuplicate(event).block());
+    deduplicator.markProcessed(event).block();
+    assertTrue(deduplicator.isDuplicate(event).block());
+  }
+
+  private double count(String source) {
+    return meterRegistry.get("event.duplicates.suppressed").tag("source", source).counter().count();
+  }
+
+  private static class InMemoryStore implements ProcessedEventStore {
+
+    private final Set<String> eventIds = new HashSet<>();
+    private int lookups;
+
+    @Override
+    public Mono<Boolean> contains(String eventId) {
+      lookups++;
+      return Mono.just(eventIds.contains(eventId));
+    }
+
+    @Override
+    public Mono<Void> add(String eventId) {
+      eventIds.add(eventId);
+      return Mono.empty();
+    }
+  }
+}
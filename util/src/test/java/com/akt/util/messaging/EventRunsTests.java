@@ -0,0 +1,30 @@
+package com.akt.util.messaging;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static com.akt.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.akt.api.event.Event;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class EventRunsTests {
+
+  @Test
+  void consecutiveEventsOfTheSameTypeFormARun() {
+    Event<Integer, Object> create1 = new Event<>(CREATE, 1, null);
+    Event<Integer, Object> create2 = new Event<>(CREATE, 2, null);
+    Event<Integer, Object> delete1 = new Event<>(DELETE, 1, null);
+    Event<Integer, Object> untyped = new Event<>(null, 3, null);
+    Event<Integer, Object> create3 = new Event<>(CREATE, 1, null);
+
+    List<List<Event<Integer, Object>>> runs = EventRuns.split(List.of(create1, create2, delete1, untyped, create3));
+
+    assertEquals(List.of(List.of(create1, create2), List.of(delete1), List.of(untyped), List.of(create3)), runs);
+  }
+
+  @Test
+  void emptyBatchHasNoRuns() {
+    assertEquals(List.of(), EventRuns.split(List.<Event<Integer, Object>>of()));
+  }
+}
@@ -0,0 +1,182 @@
+package com.akt.util.messaging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.rabbitmq.client.Channel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+
+class KeyOrderedLanesTests {
+
+  private final KeyOrderedLanes lanes = new KeyOrderedLanes("test", 4, 100);
+
+  @AfterEach
+  void tearDown() {
+    lanes.close();
+  }
+
+  @Test
+  void messagesWithTheSameKeyKeepTheirOrder() throws InterruptedException {
+    List<Integer> processed = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(100);
+
+    for (int i = 0; i < 100; i++) {
+      int sequence = i;
+      lanes.dispatch(MessageBuilder.withPayload(i).build(), 1, () -> {
+        processed.add(sequence);
+        done.countDown();
+      });
+    }
+
+    done.await(5, TimeUnit.SECONDS);
+    assertEquals(100, processed.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, processed.get(i));
+    }
+  }
+
+  @Test
+  void kafkaOffsetIsNotAcknowledgedBeforeEarlierOffsetsAreDone() throws InterruptedException {
+    CountDownLatch slowMessage = new CountDownLatch(1);
+    Acknowledgment first = mock(Acknowledgment.class);
+    Acknowledgment second = mock(Acknowledgment.class);
+
+    lanes.dispatch(kafkaMessage(0, first), 1, () -> await(slowMessage));
+    lanes.dispatch(kafkaMessage(1, second), 2, () -> { });
+
+    verify(second, after(200).never()).acknowledge();
+
+    slowMessage.countDown();
+
+    verify(second, timeout(5000)).acknowledge();
+    verify(first, never()).acknowledge();
+  }
+
+  @Test
+  void rabbitDeliveriesAreAcknowledgedInReceiveOrder() throws Exception {
+    CountDownLatch slowMessage = new CountDownLatch(1);
+    Channel channel = mock(Channel.class);
+
+    lanes.dispatch(rabbitMessage(channel, 1), 1, () -> await(slowMessage));
+    lanes.dispatch(rabbitMessage(channel, 2), 2, () -> { });
+    lanes.dispatch(rabbitMessage(channel, 3), 3, () -> { });
+
+    verify(channel, after(200).never()).basicAck(anyLong(), anyBoolean());
+
+    slowMessage.countDown();
+
+    verify(channel, timeout(5000)).basicAck(3L, true);
+    InOrder acks = inOrder(channel);
+    acks.verify(channel).basicAck(3L, true);
+    acks.verifyNoMoreInteractions();
+  }
+
+  @Test
+  void failedRabbitDeliveryIsRequeuedAndLaterDeliveriesAreAcknowledged() throws Exception {
+    Channel channel = mock(Channel.class);
+
+    lanes.dispatch(rabbitMessage(channel, 1), 1, () -> {
+      throw new IllegalStateException("failed");
+    });
+    lanes.dispatch(rabbitMessage(channel, 2), 2, () -> { });
+
+    verify(channel, timeout(5000)).basicNack(1L, false, true);
+    verify(channel, timeout(5000)).basicAck(2L, true);
+    verify(channel, never()).basicAck(eq(1L), anyBoolean());
+  }
+
+  @Test
+  void failedKafkaOffsetIsSoughtBackToAndItsPartitionResumes() throws InterruptedException {
+    Consumer<?, ?> consumer = mock(Consumer.class);
+    Acknowledgment first = mock(Acknowledgment.class);
+    Acknowledgment failed = mock(Acknowledgment.class);
+    Acknowledgment skipped = mock(Acknowledgment.class);
+    List<Long> processed = new CopyOnWriteArrayList<>();
+
+    lanes.dispatch(kafkaMessage(0, first, consumer), 1, () -> processed.add(0L));
+    lanes.dispatch(kafkaMessage(1, failed, consumer), 1, () -> {
+      throw new IllegalStateException("failed");
+    });
+    awaitLane(1);
+
+    // The next message of the partition is dropped and the consumer is sought back to the failed offset
+    lanes.dispatch(kafkaMessage(2, skipped, consumer), 1, () -> processed.add(2L));
+    lanes.dispatch(kafkaMessage(3, skipped, consumer), 1, () -> processed.add(3L));
+    awaitLane(1);
+
+    verify(consumer).seek(new TopicPartition("products", 0), 1L);
+    verify(first).acknowledge();
+    verify(failed, never()).acknowledge();
+    verify(skipped, never()).acknowledge();
+    assertEquals(List.of(0L), processed);
+
+    // The consumer fetches from the failed offset again, without a restart or rebalance
+    Acknowledgment redelivered = mock(Acknowledgment.class);
+    Acknowledgment later = mock(Acknowledgment.class);
+    lanes.dispatch(kafkaMessage(1, redelivered, consumer), 1, () -> processed.add(1L));
+    lanes.dispatch(kafkaMessage(2, later, consumer), 1, () -> processed.add(2L));
+
+    verify(later, timeout(5000)).acknowledge();
+    assertEquals(List.of(0L, 1L, 2L), processed);
+    verifyNoMoreInteractions(consumer);
+  }
+
+  private Message<Integer> kafkaMessage(long offset, Acknowledgment acknowledgment) {
+    return kafkaMessage(offset, acknowledgment, null);
+  }
+
+  private Message<Integer> kafkaMessage(long offset, Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
+    return MessageBuilder.withPayload((int) offset)
+      .setHeader(KafkaHeaders.RECEIVED_TOPIC, "products")
+      .setHeader(KafkaHeaders.RECEIVED_PARTITION, 0)
+      .setHeader(KafkaHeaders.OFFSET, offset)
+      .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+      .setHeader(KafkaHeaders.CONSUMER, consumer)
+      .build();
+  }
+
+  private Message<Integer> rabbitMessage(Channel channel, long deliveryTag) {
+    return MessageBuilder.withPayload((int) deliveryTag)
+      .setHeader(AmqpHeaders.CHANNEL, channel)
+      .setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+      .build();
+  }
+
+  // Returns once the lane of the key has processed everything dispatched to it before
+  private void awaitLane(Object key) throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(1);
+    lanes.dispatch(MessageBuilder.withPayload(-1).build(), key, done::countDown);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+  }
+
+  private void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
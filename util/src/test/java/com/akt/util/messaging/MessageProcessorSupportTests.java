@@ -0,0 +1,98 @@
+package com.akt.util.messaging;
+
+import static com.akt.api.event.Event.Type.CREATE;
+import static com.akt.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.akt.api.event.Event;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.stream.function.StreamOperations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class MessageProcessorSupportTests {
+
+  private StreamOperations streamOperations;
+  private TestProcessor processor;
+
+  @BeforeEach
+  void setUp() {
+    streamOperations = mock(StreamOperations.class);
+    when(streamOperations.send(eq("deadLetters-out-0"), any())).thenReturn(true);
+    processor = new TestProcessor(streamOperations);
+  }
+
+  @Test
+  void batchIsStoredInRunsAndFailedEventsAreDeadLettered() {
+    Event<Integer, String> create1 = new Event<>(CREATE, 1, "a");
+    Event<Integer, String> failing = new Event<>(CREATE, 2, "fail");
+    Event<Integer, String> delete1 = new Event<>(DELETE, 1, null);
+
+    processor.batchProcessor().accept(List.of(create1, failing, delete1));
+
+    assertEquals(List.of("create [a, fail]", "delete [1]"), processor.calls);
+    verify(streamOperations, times(1)).send(eq("deadLetters-out-0"), any());
+  }
+
+  @Test
+  void processedEventsAreSkippedWhenResent() {
+    Event<Integer, String> create1 = new Event<>(CREATE, 1, "a");
+    Event<Integer, String> failing = new Event<>(CREATE, 2, "fail");
+
+    processor.batchProcessor().accept(List.of(create1, failing));
+    processor.batchProcessor().accept(List.of(create1, failing));
+
+    // Only the dead-lettered event is not marked processed, so it is the only one stored again
+    assertEquals(List.of("create [a, fail]", "create [fail]"), processor.calls);
+  }
+
+  private static class TestProcessor extends MessageProcessorSupport<String> {
+
+    private final List<String> calls = new ArrayList<>();
+
+    TestProcessor(StreamOperations streamOperations) {
+      super("strings", streamOperations, new SimpleMeterRegistry(), 2, 8, "insert", 100, null);
+    }
+
+    @Override
+    protected Mono<?> create(String entity, boolean upsert) {
+      calls.add("create " + entity);
+      return Mono.just(entity);
+    }
+
+    @Override
+    protected Mono<?> delete(int productId) {
+      calls.add("delete " + productId);
+      return Mono.empty();
+    }
+
+    @Override
+    protected Flux<Integer> createAll(List<String> entities, boolean upsert) {
+      calls.add("create " + entities);
+      return Flux.fromIterable(entities).index()
+        .filter(entity -> entity.getT2().equals("fail"))
+        .map(entity -> entity.getT1().intValue());
+    }
+
+    @Override
+    protected Mono<Long> deleteAll(List<Integer> productIds) {
+      calls.add("delete " + productIds);
+      return Mono.just((long) productIds.size());
+    }
+
+    @Override
+    protected String describe(String entity) {
+      return "string " + entity;
+    }
+  }
+}